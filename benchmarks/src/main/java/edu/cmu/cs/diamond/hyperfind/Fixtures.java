@@ -0,0 +1,221 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import javax.imageio.ImageIO;
+
+/**
+ * Synthetic search results shaped like the ones an image search streams to the client: a JPEG thumbnail, the
+ * original dimensions, display attributes, a feature vector and, for each filter, a score, patches and a PNG heatmap
+ * at the original resolution. Everything is generated from a seed so that runs are comparable across commits.
+ */
+public final class Fixtures {
+
+    public static final int ORIGINAL_WIDTH = 1024;
+    public static final int ORIGINAL_HEIGHT = 768;
+    public static final int THUMBNAIL_WIDTH = 200;
+    public static final int THUMBNAIL_HEIGHT = 150;
+    public static final List<String> FILTER_NAMES = List.of("rgb_histogram", "dnn_classifier");
+
+    private static final int PATCHES_PER_FILTER = 8;
+    private static final int FEATURE_VECTOR_LENGTH = 256;
+
+    private Fixtures() {
+    }
+
+    public static ObjectId objectId(int index) {
+        return ObjectId.of("/collection/id/" + index, "diamond-" + index % 4, "diamond-" + index % 4 + ".example.org");
+    }
+
+    public static SearchResult searchResult(Random random, int index) {
+        return new SearchResult(objectId(index), resultAttributes(random, index), Optional.empty());
+    }
+
+    public static Map<String, byte[]> resultAttributes(Random random, int index) {
+        Map<String, byte[]> attributes = new HashMap<>();
+        attributes.put(ThumbnailRenderer.THUMBNAIL_ATTR, thumbnailJpeg(random));
+        attributes.put("_cols.int", intAttribute(ORIGINAL_WIDTH));
+        attributes.put("_rows.int", intAttribute(ORIGINAL_HEIGHT));
+        attributes.put("Display-Name", stringAttribute("object-" + index + ".jpg"));
+        attributes.put("Device-Name", stringAttribute("diamond-" + index % 4));
+        attributes.put("hyperfind.thumbnail-display", stringAttribute("icon"));
+        attributes.put("feature_vector.json", featureVector(random));
+
+        for (String filter : FILTER_NAMES) {
+            attributes.put("_filter." + filter + "_score", stringAttribute(Double.toString(random.nextDouble())));
+            attributes.put("_filter." + filter + ".patches", patches(random, PATCHES_PER_FILTER));
+            attributes.put("_filter." + filter + ".heatmap.png", heatmapPng(random));
+        }
+
+        return attributes;
+    }
+
+    public static byte[] thumbnailJpeg(Random random) {
+        return encode(photo(random, THUMBNAIL_WIDTH, THUMBNAIL_HEIGHT), "jpeg");
+    }
+
+    /**
+     * A grayscale heatmap at the original resolution with a few bright blobs, mostly black like real filter output.
+     */
+    public static byte[] heatmapPng(Random random) {
+        BufferedImage heatmap = new BufferedImage(ORIGINAL_WIDTH, ORIGINAL_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D g = heatmap.createGraphics();
+        for (int i = 0; i < 5; i++) {
+            int size = 50 + random.nextInt(200);
+            g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            g.fillOval(random.nextInt(ORIGINAL_WIDTH - size), random.nextInt(ORIGINAL_HEIGHT - size), size, size);
+        }
+        g.dispose();
+        return encode(heatmap, "png");
+    }
+
+    /**
+     * Patches in the format read by {@link BoundingBox#fromPatchesList(byte[])}.
+     */
+    public static byte[] patches(Random random, int count) {
+        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES + Double.BYTES + count * 4 * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(count);
+        buf.putDouble(random.nextDouble());
+        for (int i = 0; i < count; i++) {
+            int x0 = random.nextInt(ORIGINAL_WIDTH / 2);
+            int y0 = random.nextInt(ORIGINAL_HEIGHT / 2);
+            buf.putInt(x0);
+            buf.putInt(y0);
+            buf.putInt(x0 + random.nextInt(ORIGINAL_WIDTH / 2));
+            buf.putInt(y0 + random.nextInt(ORIGINAL_HEIGHT / 2));
+        }
+        return buf.array();
+    }
+
+    /**
+     * An image in the "_rgb_image.rgbimage" format decoded by {@link PopupPanel#decodeRGBImage(byte[])}.
+     */
+    public static byte[] rgbImage(Random random, int width, int height) {
+        ByteBuffer buf = ByteBuffer.allocate(16 + width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(0);
+        buf.putInt(0);
+        buf.putInt(height);
+        buf.putInt(width);
+        byte[] pixels = new byte[width * height * 4];
+        random.nextBytes(pixels);
+        buf.put(pixels);
+        return buf.array();
+    }
+
+    /**
+     * Smooth gradients with some noise, so that it compresses like a photo rather than like noise or a flat color.
+     */
+    public static BufferedImage photo(Random random, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int r0 = random.nextInt(128);
+        int g0 = random.nextInt(128);
+        int b0 = random.nextInt(128);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(16);
+                int r = (r0 + 127 * x / width + noise) & 0xff;
+                int g = (g0 + 127 * y / height + noise) & 0xff;
+                int b = (b0 + 64 * (x + y) / (width + height) + noise) & 0xff;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    public static BufferedImage heatmap(Random random) {
+        try {
+            return ImageIO.read(new ByteArrayInputStream(heatmapPng(random)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] featureVector(Random random) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < FEATURE_VECTOR_LENGTH; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(random.nextFloat());
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] intAttribute(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+
+    // NUL terminated, as sent by the Diamond servers
+    private static byte[] stringAttribute(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        byte[] attribute = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, attribute, 0, bytes.length);
+        return attribute;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, format, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Decoding the filter regions (patches and heatmaps) of a result and preparing heatmaps for display.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class RegionsBenchmark {
+
+    private SearchResult result;
+    private byte[] patches;
+    private BufferedImage heatmap;
+    private List<BufferedImage> heatmaps;
+    private BufferedImage overlay;
+    private BufferedImage canvas;
+    private HeatmapOverlayConvertOp overlayOp;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        result = Fixtures.searchResult(random, 0);
+        patches = Fixtures.patches(random, 8);
+        heatmap = Fixtures.heatmap(random);
+        heatmaps = List.of(heatmap, Fixtures.heatmap(random), Fixtures.heatmap(random), Fixtures.heatmap(random),
+                Fixtures.heatmap(random));
+        overlayOp = new HeatmapOverlayConvertOp(new Color(0x8000ff00, true));
+        overlay = overlayOp.createCompatibleDestImage(heatmap, null);
+        canvas = overlayOp.createCompatibleDestImage(heatmap, null);
+    }
+
+    @Benchmark
+    public List<BoundingBox> fromPatchesList() {
+        return BoundingBox.fromPatchesList(patches);
+    }
+
+    @Benchmark
+    public ResultRegions resultRegions(ColdImageCache _cache) {
+        return new ResultRegions(Fixtures.FILTER_NAMES, result);
+    }
+
+    @Benchmark
+    public BufferedImage heatmapOverlay() {
+        return overlayOp.filter(heatmap, overlay);
+    }
+
+    @Benchmark
+    public BufferedImage heatmapsDraw() {
+        Graphics2D g = canvas.createGraphics();
+        overlayOp.draw(g, heatmaps, 0, 0);
+        g.dispose();
+        return canvas;
+    }
+}
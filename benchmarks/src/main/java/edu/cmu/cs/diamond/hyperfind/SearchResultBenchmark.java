@@ -0,0 +1,119 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * The attribute lookups made for every result as it is rendered and shown in the result list.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SearchResultBenchmark {
+
+    private Map<String, byte[]> attributes;
+    private SearchResult result;
+    private ByteBuffer encoded;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(0);
+        attributes = Fixtures.resultAttributes(random, 0);
+        result = new SearchResult(Fixtures.objectId(0), attributes, Optional.empty());
+        encoded = result.toBuffer();
+    }
+
+    @Benchmark
+    public SearchResult fromMap() {
+        return new SearchResult(Fixtures.objectId(0), attributes, Optional.empty());
+    }
+
+    @Benchmark
+    public SearchResult fromBuffer() {
+        return SearchResult.fromBuffer(Fixtures.objectId(0), encoded, Optional.empty());
+    }
+
+    @Benchmark
+    public void listAccessors(Blackhole bh) {
+        // what the result list looks at for every hit
+        bh.consume(result.getName());
+        bh.consume(result.getInt("_cols.int").getAsInt());
+        bh.consume(result.getInt("_rows.int").getAsInt());
+        bh.consume(result.getString("hyperfind.thumbnail-display"));
+        bh.consume(result.getBytes("_gt_label").isPresent());
+        bh.consume(result.getBytes(ThumbnailRenderer.THUMBNAIL_ATTR));
+    }
+
+    @Benchmark
+    public int primitiveAccessor() {
+        return result.getInt("_cols.int", 0);
+    }
+
+    @Benchmark
+    public String stringAccessor() {
+        return result.getString("Display-Name", null);
+    }
+
+    @Benchmark
+    public SearchResult withoutAttributes() {
+        return result.withoutAttributes("_rgb_image.rgbimage", SearchResult.DATA_ATTR, "feature_vector.json");
+    }
+}
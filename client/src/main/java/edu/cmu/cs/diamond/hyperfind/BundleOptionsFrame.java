@@ -805,13 +805,9 @@ public class BundleOptionsFrame extends JFrame {
             public Example(byte[] example) {
                 this.example = example;
 
-                BufferedImage image = readImage(example);
-                // copy image
+                BufferedImage image = DecodedImageCache.shared().get(example, () -> readImage(example));
                 int width = image.getWidth();
                 int height = image.getHeight();
-                Graphics2D g2 = image.createGraphics();
-                g2.drawImage(image, 0, 0, null);
-                g2.dispose();
 
                 // create icon
                 if (Math.max(width, height) > ICON_SIZE) {
@@ -825,7 +821,7 @@ public class BundleOptionsFrame extends JFrame {
                 BufferedImage buf = new BufferedImage(width, height,
                         BufferedImage.TYPE_INT_RGB);
 
-                g2 = buf.createGraphics();
+                Graphics2D g2 = buf.createGraphics();
                 g2.setRenderingHint(
                         RenderingHints.KEY_INTERPOLATION,
                         RenderingHints.VALUE_INTERPOLATION_BICUBIC);
@@ -835,7 +831,7 @@ public class BundleOptionsFrame extends JFrame {
                 this.icon = new ImageIcon(buf);
             }
 
-            private BufferedImage readImage(byte[] example) {
+            private static BufferedImage readImage(byte[] example) {
                 try {
                     return ImageIO.read(new ByteArrayInputStream(example));
                 } catch (IOException e) {
@@ -0,0 +1,199 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Tuning knobs for the client, read from {@code hyperfind.*} Java system properties (e.g. passed through
+ * {@code JAVA_OPTS}). See the README for the list of settings.
+ */
+final class ClientSettings {
+
+    private static final String PREFIX = "hyperfind.";
+
+    private ClientSettings() {
+    }
+
+    /**
+     * Number of threads decoding and rendering result thumbnails.
+     */
+    static int renderThreads() {
+        return Math.max(1, getInt("renderThreads", Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * Number of results that may be fetched but not yet shown before the fetch thread blocks.
+     */
+    static int renderQueueSize() {
+        return Math.max(1, getInt("renderQueueSize", 64));
+    }
+
+    /**
+     * Whether results are added to the result list in the order the search returned them, rather than as soon as
+     * they are rendered.
+     */
+    static boolean orderedResults() {
+        return getBoolean("orderedResults", true);
+    }
+
+    /**
+     * Upper bound on the memory used by decoded result thumbnails, in bytes.
+     */
+    static long thumbnailCacheBytes() {
+        return Math.max(1, getInt("thumbnailCacheMB", 256)) * 1024L * 1024L;
+    }
+
+    /**
+     * Upper bound on the memory used by decoded object images (thumbnails, heatmaps, popup images and examples) that
+     * are kept for reuse, in bytes. Images beyond it are only kept until the heap runs low.
+     */
+    static long imageCacheBytes() {
+        return Math.max(1, getInt("imageCacheMB", 128)) * 1024L * 1024L;
+    }
+
+    /**
+     * Whether result thumbnails are only decoded and rendered once they are scrolled into view, instead of as soon
+     * as the result arrives.
+     */
+    static boolean lazyThumbnails() {
+        return getBoolean("lazyThumbnails", true);
+    }
+
+    /**
+     * Number of fully fetched results (as shown in popups) kept around for reopening.
+     */
+    static int detailCacheSize() {
+        return Math.max(1, getInt("detailCacheSize", 16));
+    }
+
+    /**
+     * Upper bound on the attribute data of fully fetched results kept around, in bytes.
+     */
+    static long detailCacheBytes() {
+        return Math.max(1, getInt("detailCacheMB", 256)) * 1024L * 1024L;
+    }
+
+    /**
+     * Number of results after the selected one whose full objects are fetched ahead of time, 0 to not prefetch.
+     */
+    static int prefetchCount() {
+        return Math.max(0, getInt("prefetchCount", 4));
+    }
+
+    /**
+     * Number of objects prefetched at once.
+     */
+    static int prefetchThreads() {
+        return Math.max(1, getInt("prefetchThreads", 2));
+    }
+
+    /**
+     * Number of search factories kept for testing predicates against objects in popups.
+     */
+    static int testFactoryCacheSize() {
+        return Math.max(1, getInt("testFactoryCacheSize", 8));
+    }
+
+    /**
+     * Number of objects requested together when exporting labeled results.
+     */
+    static int exportBatchSize() {
+        return Math.max(1, getInt("exportBatchSize", 50));
+    }
+
+    /**
+     * Maximum number of batches requested at once when exporting labeled results.
+     */
+    static int exportMaxBatches() {
+        return Math.max(1, getInt("exportMaxBatches", 8));
+    }
+
+    /**
+     * Upper bound on the disk space used by re-executed results kept across sessions, in bytes, 0 (the default) to not
+     * keep them.
+     */
+    static long resultCacheBytes() {
+        return Math.max(0, getInt("resultCacheMB", 0)) * 1024L * 1024L;
+    }
+
+    /**
+     * Directory where re-executed results are kept.
+     */
+    static Path resultCacheDir() {
+        return Optional.ofNullable(System.getProperty(PREFIX + "resultCacheDir"))
+                .map(Paths::get)
+                .orElseGet(() -> Paths.get(System.getProperty("user.home"), ".diamond", "hyperfind-results"));
+    }
+
+    /**
+     * Number of labels that are sent to the search at once, without waiting for the flush delay.
+     */
+    static int labelBatchSize() {
+        return Math.max(1, getInt("labelBatchSize", 100));
+    }
+
+    /**
+     * How long labels are held for others to join their batch before being sent to the search.
+     */
+    static Duration labelFlushDelay() {
+        return Duration.ofMillis(Math.max(0, getInt("labelFlushMillis", 250)));
+    }
+
+    /**
+     * Directory to record searches to, for replaying them later, or empty to not record.
+     */
+    static Optional<Path> recordDir() {
+        return Optional.ofNullable(System.getProperty(PREFIX + "recordDir")).map(Paths::get);
+    }
+
+    private static int getInt(String name, int defaultValue) {
+        return Integer.getInteger(PREFIX + name, defaultValue);
+    }
+
+    private static boolean getBoolean(String name, boolean defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        return value == null ? defaultValue : Boolean.parseBoolean(value);
+    }
+}
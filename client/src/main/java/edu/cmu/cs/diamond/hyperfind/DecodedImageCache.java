@@ -0,0 +1,227 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.awt.image.BufferedImage;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Decoded images shared by everything that shows object data: result thumbnails and heatmaps, popups and example
+ * icons. Images are keyed by a digest of the encoded bytes they were decoded from rather than by object, since the
+ * same object comes back with different data when it is tested again with changed filter parameters. Keys do not hold
+ * on to the encoded bytes, so the budget below accounts for everything the cache keeps alive.
+ *
+ * <p>The most recently used images are held strongly up to a byte budget. Images pushed out of that budget are kept
+ * softly, so they survive until the heap gets tight. Cached images are shared and must not be drawn on; callers that
+ * need to modify one copy it first.
+ */
+final class DecodedImageCache {
+
+    private static final DecodedImageCache SHARED = new DecodedImageCache(ClientSettings.imageCacheBytes());
+
+    // fast and wide enough that distinct images of the same size never collide in practice
+    private static final HashFunction DIGEST = Hashing.murmur3_128();
+
+    private final long maxBytes;
+
+    // access-ordered, least recently used first
+    private final Map<Key, BufferedImage> strong = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Key, SoftEntry> soft = new HashMap<>();
+    private final ReferenceQueue<BufferedImage> cleared = new ReferenceQueue<>();
+    private long bytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong softHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    DecodedImageCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    static DecodedImageCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Returns the image decoded from {@code encoded}, the value of {@code attribute}, calling {@code decoder} if it is
+     * not cached. Images the decoder fails to produce (null) are not cached.
+     */
+    BufferedImage get(String attribute, byte[] encoded, Supplier<BufferedImage> decoder) {
+        return get(new Key(DIGEST.hashBytes(encoded), encoded.length, attribute), decoder);
+    }
+
+    /**
+     * Returns the image decoded from {@code encoded}, calling {@code decoder} if it is not cached.
+     */
+    BufferedImage get(byte[] encoded, Supplier<BufferedImage> decoder) {
+        return get("", encoded, decoder);
+    }
+
+    long getHits() {
+        return hits.get() + softHits.get();
+    }
+
+    long getMisses() {
+        return misses.get();
+    }
+
+    synchronized void clear() {
+        strong.clear();
+        soft.clear();
+        bytes = 0;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(
+                "%d hits (%d soft), %d misses, %d images in %d KB, %d soft",
+                getHits(), softHits.get(), getMisses(), strong.size(), bytes / 1024, soft.size());
+    }
+
+    private BufferedImage get(Key key, Supplier<BufferedImage> decoder) {
+        BufferedImage image = lookup(key);
+        if (image != null) {
+            return image;
+        }
+
+        // decode outside the lock; racing threads may decode the same image, the last one is kept
+        misses.incrementAndGet();
+        image = decoder.get();
+        if (image != null) {
+            put(key, image);
+        }
+        return image;
+    }
+
+    private synchronized BufferedImage lookup(Key key) {
+        expungeCleared();
+
+        BufferedImage image = strong.get(key);
+        if (image != null) {
+            hits.incrementAndGet();
+            return image;
+        }
+
+        SoftEntry entry = soft.remove(key);
+        image = (entry == null) ? null : entry.get();
+        if (image != null) {
+            softHits.incrementAndGet();
+            put(key, image);
+        }
+        return image;
+    }
+
+    private synchronized void put(Key key, BufferedImage image) {
+        expungeCleared();
+
+        BufferedImage old = strong.put(key, image);
+        if (old != null) {
+            bytes -= ThumbnailCache.sizeOf(old);
+        }
+        bytes += ThumbnailCache.sizeOf(image);
+        soft.remove(key);
+
+        // always keep the newest entry, even if it is larger than the budget on its own
+        Iterator<Map.Entry<Key, BufferedImage>> it = strong.entrySet().iterator();
+        while (bytes > maxBytes && strong.size() > 1) {
+            Map.Entry<Key, BufferedImage> eldest = it.next();
+            bytes -= ThumbnailCache.sizeOf(eldest.getValue());
+            soft.put(eldest.getKey(), new SoftEntry(eldest.getKey(), eldest.getValue(), cleared));
+            it.remove();
+        }
+    }
+
+    private void expungeCleared() {
+        for (Object ref = cleared.poll(); ref != null; ref = cleared.poll()) {
+            SoftEntry entry = (SoftEntry) ref;
+            soft.remove(entry.key, entry);
+        }
+    }
+
+    private static final class SoftEntry extends SoftReference<BufferedImage> {
+
+        private final Key key;
+
+        SoftEntry(Key key, BufferedImage image, ReferenceQueue<BufferedImage> queue) {
+            super(image, queue);
+            this.key = key;
+        }
+    }
+
+    private static final class Key {
+
+        private final HashCode digest;
+        private final int length;
+        // the attribute tells apart decoders that read the same bytes differently
+        private final String attribute;
+
+        Key(HashCode digest, int length, String attribute) {
+            this.digest = digest;
+            this.length = length;
+            this.attribute = attribute;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return digest.equals(other.digest) && length == other.length && attribute.equals(other.attribute);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(digest, length, attribute);
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Remembers the last few results fetched with all their attributes. Searches only stream the attributes needed for
+ * the result list, so opening a popup fetches the full object (decoded image, object data and filter outputs) from
+ * the server; this keeps reopening the same results from re-executing them every time.
+ *
+ * <p>The cache is bounded both by the number of results and by the bytes of attribute data they hold. A result that
+ * is already being fetched (e.g. by the {@link DetailPrefetcher}) is not fetched a second time; later callers wait
+ * for the first fetch instead.
+ *
+ * <p>Entries are only valid for the search factory that produced them and are dropped when a different one is used.
+ */
+final class DetailCache {
+
+    private final int capacity;
+    private final long maxBytes;
+
+    // access-ordered, least recently used first
+    private final Map<ObjectId, SearchResult> results = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<ObjectId, CompletableFuture<SearchResult>> fetching = new HashMap<>();
+    private long bytes = 0;
+
+    private SearchFactory factory;
+
+    DetailCache(int capacity, long maxBytes) {
+        this.capacity = capacity;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the result with all of its attributes, fetching it from the server if it is not cached.
+     */
+    SearchResult getResult(SearchFactory searchFactory, ObjectId id) {
+        CompletableFuture<SearchResult> fetch;
+        CompletableFuture<SearchResult> running;
+        synchronized (this) {
+            setFactory(searchFactory);
+
+            SearchResult cached = results.get(id);
+            if (cached != null) {
+                return cached;
+            }
+
+            running = fetching.get(id);
+            fetch = new CompletableFuture<>();
+            if (running == null) {
+                fetching.put(id, fetch);
+            }
+        }
+
+        if (running != null) {
+            return await(running);
+        }
+
+        try {
+            SearchResult result = searchFactory.getResult(id, Collections.emptySet());
+            synchronized (this) {
+                if (searchFactory == factory) {
+                    put(id, result);
+                }
+            }
+            fetch.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            fetch.completeExceptionally(e);
+            throw e;
+        } finally {
+            synchronized (this) {
+                fetching.remove(id, fetch);
+            }
+        }
+    }
+
+    /**
+     * @return true if the result is cached or being fetched
+     */
+    synchronized boolean contains(SearchFactory searchFactory, ObjectId id) {
+        return searchFactory == factory && (results.containsKey(id) || fetching.containsKey(id));
+    }
+
+    private void setFactory(SearchFactory searchFactory) {
+        if (searchFactory != factory) {
+            results.clear();
+            // fetches still running for the old factory finish on their own but are no longer shared
+            fetching.clear();
+            bytes = 0;
+            factory = searchFactory;
+        }
+    }
+
+    private void put(ObjectId id, SearchResult result) {
+        SearchResult old = results.put(id, result);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += sizeOf(result);
+
+        // always keep the newest entry, even if it is larger than the budget on its own
+        Iterator<SearchResult> it = results.values().iterator();
+        while ((results.size() > capacity || bytes > maxBytes) && results.size() > 1) {
+            bytes -= sizeOf(it.next());
+            it.remove();
+        }
+    }
+
+    private static SearchResult await(CompletableFuture<SearchResult> fetch) {
+        try {
+            return fetch.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for result", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to fetch result", e.getCause());
+        }
+    }
+
+    private static long sizeOf(SearchResult result) {
+        long size = 0;
+        for (String key : result.getKeys()) {
+            size += result.getBuffer(key).get().remaining();
+        }
+        return size;
+    }
+}
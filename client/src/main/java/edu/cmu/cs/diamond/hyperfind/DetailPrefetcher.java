@@ -0,0 +1,120 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fetches the full objects of the results the user is likely to open next into a {@link DetailCache}, so that their
+ * popups open without waiting on the server.
+ *
+ * <p>Each call to {@link #prefetch} replaces the set of wanted results: fetches that have not started yet for results
+ * no longer wanted are cancelled. Fetches already talking to the server are left to finish, since interrupting them
+ * could close a connection shared with the search, and they still end up in the cache. Only called on the event
+ * dispatch thread.
+ */
+final class DetailPrefetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(DetailPrefetcher.class);
+
+    private final DetailCache cache;
+    private final ThreadPoolExecutor executor;
+    private final Map<ObjectId, Future<?>> pending = new HashMap<>();
+
+    DetailPrefetcher(DetailCache cache, int threads) {
+        this.cache = cache;
+        this.executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("detail-prefetch-%d").setDaemon(true).build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Fetches the given results, nearest first, unless they are cached.
+     */
+    void prefetch(List<HyperFindResult> wanted) {
+        Set<ObjectId> wantedIds = wanted.stream().map(r -> r.getResult().getId()).collect(Collectors.toSet());
+
+        pending.entrySet().removeIf(e -> {
+            if (!wantedIds.contains(e.getKey())) {
+                e.getValue().cancel(false);
+                return true;
+            }
+            return e.getValue().isDone();
+        });
+
+        for (HyperFindResult r : wanted) {
+            ObjectId id = r.getResult().getId();
+            SearchFactory factory = r.getActivePredicateSet().getSearchFactory();
+            if (!pending.containsKey(id) && !cache.contains(factory, id)) {
+                pending.put(id, executor.submit(() -> fetch(factory, id)));
+            }
+        }
+    }
+
+    /**
+     * Cancels all fetches that have not started yet.
+     */
+    void cancel() {
+        prefetch(List.of());
+    }
+
+    private void fetch(SearchFactory factory, ObjectId id) {
+        try {
+            cache.getResult(factory, id);
+        } catch (RuntimeException e) {
+            // opening the popup will try again and report it
+            log.debug("Failed to prefetch {}", id, e);
+        }
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Connection;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Filter;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchInfo;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.Bundle;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.BundleState;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Wraps a connection so that the search factories it makes keep re-executed results in a {@link ResultDiskCache}.
+ */
+final class DiskCachedConnection implements Connection {
+
+    private final Connection delegate;
+    private final ResultDiskCache cache;
+
+    DiskCachedConnection(Connection delegate, ResultDiskCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public SearchFactory getSearchFactory(List<Filter> filters) {
+        return new DiskCachedSearchFactory(delegate.getSearchFactory(filters), cache, fingerprint(filters));
+    }
+
+    @Override
+    public List<SearchInfo> getRunningSearches() {
+        return delegate.getRunningSearches();
+    }
+
+    @Override
+    public List<Bundle> getBundles() {
+        return delegate.getBundles();
+    }
+
+    @Override
+    public Bundle getBundle(InputStream inputStream) {
+        return delegate.getBundle(inputStream);
+    }
+
+    @Override
+    public Bundle restoreBundle(BundleState state) {
+        return delegate.restoreBundle(state);
+    }
+
+    @Override
+    public void defineScope() {
+        delegate.defineScope();
+    }
+
+    @Override
+    public boolean supportsOfflineSearch() {
+        return delegate.supportsOfflineSearch();
+    }
+
+    @Override
+    public boolean supportsPredicateFiles() {
+        return delegate.supportsPredicateFiles();
+    }
+
+    // everything that can change a filter's output, with the code and blob represented by their digests
+    private static String fingerprint(List<Filter> filters) {
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (Filter filter : filters) {
+            hasher.putString(filter.name(), StandardCharsets.UTF_8).putByte((byte) 0)
+                    .putString(filter.code().digest(), StandardCharsets.UTF_8)
+                    .putString(filter.blob().digest(), StandardCharsets.UTF_8)
+                    .putDouble(filter.minScore())
+                    .putDouble(filter.maxScore());
+            putAll(hasher, filter.dependencies());
+            putAll(hasher, filter.arguments());
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void putAll(Hasher hasher, List<String> values) {
+        hasher.putInt(values.size());
+        for (String value : values) {
+            hasher.putString(value, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.HyperFindPredicateState;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ResultCallback;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Search;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Answers re-execution requests from a {@link ResultDiskCache} when it can, and stores what the wrapped factory
+ * returns otherwise. Searches and results computed from raw data are passed through.
+ */
+final class DiskCachedSearchFactory implements SearchFactory {
+
+    private static final Logger log = LoggerFactory.getLogger(DiskCachedSearchFactory.class);
+
+    private final SearchFactory delegate;
+    private final ResultDiskCache cache;
+    private final String filterFingerprint;
+
+    DiskCachedSearchFactory(SearchFactory delegate, ResultDiskCache cache, String filterFingerprint) {
+        this.delegate = delegate;
+        this.cache = cache;
+        this.filterFingerprint = filterFingerprint;
+    }
+
+    @Override
+    public Search createSearch(Set<String> attributes, List<HyperFindPredicateState> predicateState) {
+        return delegate.createSearch(attributes, predicateState);
+    }
+
+    @Override
+    public SearchResult getResult(ObjectId objectId, Set<String> attributes) {
+        String key = ResultDiskCache.key(filterFingerprint, objectId, attributes);
+        Optional<SearchResult> cached = cache.get(key, objectId);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+
+        SearchResult result = delegate.getResult(objectId, attributes);
+        cache.put(key, result);
+        return result;
+    }
+
+    @Override
+    public SearchResult getResult(byte[] data, Set<String> attributes) {
+        return delegate.getResult(data, attributes);
+    }
+
+    @Override
+    public Map<ObjectId, SearchResult> getResults(Collection<ObjectId> objectIds, Set<String> attributes) {
+        Map<ObjectId, SearchResult> results = new HashMap<>();
+        List<ObjectId> failed = new ArrayList<>();
+
+        getResults(objectIds, attributes, new ResultCallback() {
+            @Override
+            public void onResult(ObjectId objectId, SearchResult result) {
+                synchronized (results) {
+                    results.put(objectId, result);
+                }
+            }
+
+            @Override
+            public void onFailure(ObjectId objectId, RuntimeException error) {
+                log.debug("Failed to re-execute {}", objectId.objectId(), error);
+                synchronized (results) {
+                    failed.add(objectId);
+                }
+            }
+        });
+
+        if (!failed.isEmpty()) {
+            log.warn("Left {} of {} objects out of the results: {}", failed.size(), objectIds.size(),
+                    failed.stream().map(ObjectId::objectId).collect(Collectors.toList()));
+        }
+        return results;
+    }
+
+    @Override
+    public void getResults(Collection<ObjectId> objectIds, Set<String> attributes, ResultCallback callback) {
+        List<ObjectId> missing = new ArrayList<>();
+        for (ObjectId id : objectIds) {
+            cache.get(ResultDiskCache.key(filterFingerprint, id, attributes), id)
+                    .ifPresentOrElse(r -> callback.onResult(id, r), () -> missing.add(id));
+        }
+
+        if (!missing.isEmpty()) {
+            delegate.getResults(missing, attributes, new ResultCallback() {
+                @Override
+                public void onResult(ObjectId objectId, SearchResult result) {
+                    cache.put(ResultDiskCache.key(filterFingerprint, objectId, attributes), result);
+                    callback.onResult(objectId, result);
+                }
+
+                @Override
+                public void onFailure(ObjectId objectId, RuntimeException error) {
+                    callback.onFailure(objectId, error);
+                }
+            });
+        }
+    }
+}
@@ -41,24 +41,117 @@
 package edu.cmu.cs.diamond.hyperfind;
 
 import java.awt.Color;
+import java.awt.Graphics2D;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.Point2D;
 import java.awt.geom.Rectangle2D;
 import java.awt.image.*;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
 
+/**
+ * Turns a grayscale heatmap into a single-color overlay whose alpha follows the heatmap's intensity.
+ *
+ * <p>Gray and packed-int heatmaps are converted by reading and writing the rasters' data arrays directly, splitting
+ * large ones into bands of rows that are converted in parallel. Other image types go through SwingX, or the
+ * per-pixel {@link BufferedImage#getRGB} path if SwingX is missing.
+ *
+ * <p>Several heatmaps are best shown through {@link #draw} or {@link #composite}, which fuse their overlays into one
+ * image in a single pass instead of converting and drawing each of them.
+ */
 class HeatmapOverlayConvertOp implements BufferedImageOp {
+
+    // smaller heatmaps are not worth handing to other threads
+    private static final int PARALLEL_PIXELS = 512 * 512;
+    private static final int PARALLEL_ROWS = 64;
+
     private final Color overlayColor;
+    private final int rgb;
+    private final int baseAlpha;
+
+    // per-thread destination for draw(), grown as needed
+    private final ThreadLocal<BufferedImage> scratch = new ThreadLocal<>();
 
     public HeatmapOverlayConvertOp(Color overlayColor) {
         this.overlayColor = overlayColor;
+        this.rgb = overlayColor.getRGB() & 0xffffff;
+        this.baseAlpha = overlayColor.getAlpha();
     }
 
     public Color getOverlayColor() {
         return overlayColor;
     }
 
+    /**
+     * Draws the combined overlay of {@code heatmaps} at the given position, composited into an image reused across
+     * calls on the same thread, so that a whole stack of heatmaps costs one pass over the pixels and one (possibly
+     * scaled) draw.
+     */
+    public void draw(Graphics2D g, List<BufferedImage> heatmaps, int x, int y) {
+        if (heatmaps.isEmpty()) {
+            return;
+        }
+
+        int width = heatmaps.stream().mapToInt(BufferedImage::getWidth).max().getAsInt();
+        int height = heatmaps.stream().mapToInt(BufferedImage::getHeight).max().getAsInt();
+
+        BufferedImage dest = scratch.get();
+        if (dest == null || dest.getWidth() < width || dest.getHeight() < height) {
+            dest = new BufferedImage(
+                    Math.max(width, dest == null ? 0 : dest.getWidth()),
+                    Math.max(height, dest == null ? 0 : dest.getHeight()),
+                    BufferedImage.TYPE_INT_ARGB);
+            scratch.set(dest);
+        }
+
+        composite(heatmaps, dest, width, height);
+        g.drawImage(dest, x, y, x + width, y + height, 0, 0, width, height, null);
+    }
+
+    /**
+     * Returns the overlays of {@code heatmaps} composited over each other in order, as if each had been converted and
+     * drawn onto a transparent {@code width} by {@code height} image, but in a single pass.
+     */
+    public BufferedImage composite(List<BufferedImage> heatmaps, int width, int height) {
+        BufferedImage dest = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        composite(heatmaps, dest, width, height);
+        return dest;
+    }
+
+    private void composite(List<BufferedImage> heatmaps, BufferedImage dest, int width, int height) {
+        int[] out = ((DataBufferInt) dest.getRaster().getDataBuffer()).getData();
+        int outStride = ((SinglePixelPackedSampleModel) dest.getSampleModel()).getScanlineStride();
+        Layer[] layers = heatmaps.stream().map(Layer::new).toArray(Layer[]::new);
+
+        forEachBand(width, height, (start, end) -> {
+            int[] alphas = new int[width];
+            for (int y = start; y < end; y++) {
+                int offset = y * outStride;
+                Arrays.fill(out, offset, offset + width, 0);
+
+                for (Layer layer : layers) {
+                    int layerWidth = Math.min(width, layer.image.getWidth());
+                    if (y >= layer.image.getHeight()) {
+                        continue;
+                    }
+
+                    layer.getAlphas(y, layerWidth, alphas);
+                    for (int x = 0; x < layerWidth; x++) {
+                        // source over, rounded the way Java2D does it; heatmaps are mostly empty
+                        int a = alphas[x];
+                        if (a != 0) {
+                            int total = a + ((255 - a) * (out[offset + x] >>> 24) + 127) / 255;
+                            out[offset + x] = (total << 24) | rgb;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
     private void checkColorModel(ColorModel model) {
         if (!model.hasAlpha() || model.isAlphaPremultiplied()) {
             throw new IllegalArgumentException(
@@ -94,21 +187,189 @@ class HeatmapOverlayConvertOp implements BufferedImageOp {
             dest = createCompatibleDestImage(src, null);
         }
 
-        final int rgb = (overlayColor.getRed() << 16) |
-                        (overlayColor.getGreen() << 8) |
-                        overlayColor.getBlue();
-        final int baseAlpha = overlayColor.getAlpha();
+        if (!convertDirect(src, dest)) {
+            convertPixels(src, dest);
+        }
+
+        return dest;
+    }
+
+    /**
+     * Converts {@code src} into the top left corner of {@code dest} through their data arrays, if both are laid out
+     * in a way this understands.
+     *
+     * @return false if the images need the generic path
+     */
+    private boolean convertDirect(BufferedImage src, BufferedImage dest) {
+        if (dest.getType() != BufferedImage.TYPE_INT_ARGB || !isUnshared(dest.getRaster())
+                || !isUnshared(src.getRaster())) {
+            return false;
+        }
+
+        int[] lut;
+        switch (src.getType()) {
+            case BufferedImage.TYPE_BYTE_GRAY:
+                lut = getGrayLut(src.getColorModel());
+                break;
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                lut = null;
+                break;
+            default:
+                return false;
+        }
+
+        int width = src.getWidth();
+        int height = src.getHeight();
+        int[] out = ((DataBufferInt) dest.getRaster().getDataBuffer()).getData();
+        int outStride = ((SinglePixelPackedSampleModel) dest.getSampleModel()).getScanlineStride();
+        DataBuffer in = src.getRaster().getDataBuffer();
+        SampleModel inModel = src.getSampleModel();
+
+        forEachBand(width, height, (start, end) -> {
+            for (int y = start; y < end; y++) {
+                if (lut != null) {
+                    convertGrayRow(((DataBufferByte) in).getData(), (ComponentSampleModel) inModel, lut,
+                            out, y * outStride, width, y);
+                } else {
+                    convertIntRow(((DataBufferInt) in).getData(), (SinglePixelPackedSampleModel) inModel,
+                            out, y * outStride, width, y);
+                }
+            }
+        });
+
+        return true;
+    }
+
+    /**
+     * Runs {@code rows} over bands of rows, in parallel if the image is large.
+     */
+    private static void forEachBand(int width, int height, RowRange rows) {
+        IntStream bands = IntStream.range(0, (height + PARALLEL_ROWS - 1) / PARALLEL_ROWS);
+        if ((long) width * height >= PARALLEL_PIXELS) {
+            bands = bands.parallel();
+        }
+        bands.forEach(band -> rows.accept(band * PARALLEL_ROWS, Math.min(height, (band + 1) * PARALLEL_ROWS)));
+    }
+
+    private static void convertGrayRow(byte[] in, ComponentSampleModel model, int[] lut, int[] out, int outOffset,
+            int width, int y) {
+        int offset = model.getOffset(0, y);
+        int stride = model.getPixelStride();
+        for (int x = 0; x < width; x++) {
+            out[outOffset + x] = lut[in[offset + x * stride] & 0xff];
+        }
+    }
+
+    private void convertIntRow(int[] in, SinglePixelPackedSampleModel model, int[] out, int outOffset, int width,
+            int y) {
+        // the blue component, like the gray level of a gray image read as RGB
+        int offset = model.getOffset(0, y);
+        for (int x = 0; x < width; x++) {
+            int a = (in[offset + x] & 0xff) * baseAlpha / 255;
+            out[outOffset + x] = (a << 24) | rgb;
+        }
+    }
+
+    // gray levels go through the color model like getRGB() does, so both paths agree
+    private int[] getGrayLut(ColorModel model) {
+        int[] lut = new int[256];
+        byte[] pixel = new byte[1];
+        for (int v = 0; v < lut.length; v++) {
+            pixel[0] = (byte) v;
+            int a = (model.getRGB(pixel) & 0xff) * baseAlpha / 255;
+            lut[v] = (a << 24) | rgb;
+        }
+        return lut;
+    }
+
+    private void convertPixels(BufferedImage src, BufferedImage dest) {
+        int width = src.getWidth();
+        int height = src.getHeight();
+
+        int[] pixels;
+        try {
+            pixels = GraphicsUtilitiesWrapper.getPixels(src, 0, 0, width, height, null);
+        } catch (GraphicsUtilitiesWrapper.WrappedClassException e) {
+            pixels = src.getRGB(0, 0, width, height, null, 0, width);
+        }
 
-        int[] pixels = GraphicsUtilitiesWrapper.getPixels(src, 0, 0,
-                src.getWidth(), src.getHeight(), null);
         for (int i = 0; i < pixels.length; i++) {
             int a = (pixels[i] & 0xff) * baseAlpha / 255;
             pixels[i] = (a << 24) | rgb;
         }
-        GraphicsUtilitiesWrapper.setPixels(dest, 0, 0, src.getWidth(),
-                src.getHeight(), pixels);
 
-        return dest;
+        try {
+            GraphicsUtilitiesWrapper.setPixels(dest, 0, 0, width, height, pixels);
+        } catch (GraphicsUtilitiesWrapper.WrappedClassException e) {
+            dest.setRGB(0, 0, width, height, pixels, 0, width);
+        }
+    }
+
+    private interface RowRange {
+        void accept(int start, int end);
+    }
+
+    /**
+     * Reads the overlay alpha of a heatmap row by row, through its data array when possible.
+     */
+    private final class Layer {
+
+        private final BufferedImage image;
+        // overlay alpha by gray level or, for packed-int images, blue component
+        private final int[] alphaLut = new int[256];
+        private final boolean gray;
+        private final boolean direct;
+
+        Layer(BufferedImage image) {
+            this.image = image;
+            this.gray = image.getType() == BufferedImage.TYPE_BYTE_GRAY;
+            this.direct = isUnshared(image.getRaster()) && (gray
+                    || image.getType() == BufferedImage.TYPE_INT_RGB
+                    || image.getType() == BufferedImage.TYPE_INT_ARGB);
+
+            byte[] pixel = new byte[1];
+            for (int v = 0; v < alphaLut.length; v++) {
+                pixel[0] = (byte) v;
+                int level = (direct && gray) ? (image.getColorModel().getRGB(pixel) & 0xff) : v;
+                alphaLut[v] = level * baseAlpha / 255;
+            }
+        }
+
+        void getAlphas(int y, int width, int[] alphas) {
+            if (direct && gray) {
+                byte[] in = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+                ComponentSampleModel model = (ComponentSampleModel) image.getSampleModel();
+                int offset = model.getOffset(0, y);
+                int stride = model.getPixelStride();
+                for (int x = 0; x < width; x++) {
+                    alphas[x] = alphaLut[in[offset + x * stride] & 0xff];
+                }
+                return;
+            }
+
+            int[] in;
+            int offset;
+            if (direct) {
+                in = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                offset = ((SinglePixelPackedSampleModel) image.getSampleModel()).getOffset(0, y);
+            } else {
+                in = image.getRGB(0, y, width, 1, alphas, 0, width);
+                offset = 0;
+            }
+            for (int x = 0; x < width; x++) {
+                alphas[x] = alphaLut[in[offset + x] & 0xff];
+            }
+        }
+    }
+
+    // rasters that are not views into a larger image and start at the beginning of their only bank
+    private static boolean isUnshared(WritableRaster raster) {
+        return raster.getParent() == null
+                && raster.getSampleModelTranslateX() == 0
+                && raster.getSampleModelTranslateY() == 0
+                && raster.getDataBuffer().getNumBanks() == 1
+                && raster.getDataBuffer().getOffset() == 0;
     }
 
     @Override
@@ -96,6 +96,11 @@ public class HyperFindPredicateFactory {
     }
 
     public static HyperFindPredicate createHyperFindPredicate(Connection connection, URI uri) throws IOException {
+        // callers fall back to reading the file as an example image
+        if (!connection.supportsPredicateFiles()) {
+            throw new IOException("This connection cannot load predicate files");
+        }
+
         InputStream in = uri.toURL().openStream();
         Bundle bundle = connection.getBundle(in);
 
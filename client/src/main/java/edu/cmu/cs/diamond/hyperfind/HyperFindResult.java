@@ -49,12 +49,13 @@ public class HyperFindResult {
 
     private final SearchResult result;
 
-    private final ResultRegions regions;
-
     public HyperFindResult(ActivePredicateSet predicateSet, SearchResult result) {
         this.predicateSet = predicateSet;
         this.result = result;
-        this.regions = new ResultRegions(predicateSet.getFilterNames(), result);
+    }
+
+    HyperFindResult withResult(SearchResult newResult) {
+        return new HyperFindResult(predicateSet, newResult);
     }
 
     public void popup() {
@@ -75,7 +76,11 @@ public class HyperFindResult {
         return result;
     }
 
+    /**
+     * Decodes the patches and heatmaps of this result. Heatmaps come from the shared {@link DecodedImageCache}, so
+     * asking again soon after is cheap.
+     */
     public ResultRegions getRegions() {
-        return regions;
+        return new ResultRegions(predicateSet.getFilterNames(), result);
     }
 }
@@ -201,17 +201,8 @@ class ImageRegionsLabel extends JLabel {
             return null;
         }
 
-        BufferedImage image = new BufferedImage(entireImage.width,
-                entireImage.height, BufferedImage.TYPE_INT_ARGB);
-
         // compute merged overlay
-        Graphics2D g = image.createGraphics();
-        for (BufferedImage heatmap : heatmaps) {
-            g.drawImage(heatmap, op, 0, 0);
-        }
-        g.dispose();
-
-        return image;
+        return op.composite(heatmaps, entireImage.width, entireImage.height);
     }
 
     @Override
@@ -0,0 +1,231 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends the labels given to results to a running search in batches.
+ *
+ * <p>Labels are held for a short delay, or until a batch is full, so that a burst of labeling goes out in a few
+ * calls. Only the latest label of each object is kept while waiting. Batches are sent one at a time from a single
+ * thread, so a newer label for an object never overtakes an older one. A failed batch is retried with exponential
+ * backoff, without the objects that have been labeled again in the meantime; after the last attempt its labels are
+ * counted as failed.
+ */
+final class LabelDispatcher {
+
+    private static final Logger log = LoggerFactory.getLogger(LabelDispatcher.class);
+
+    private static final int MAX_ATTEMPTS = 5;
+    private static final long INITIAL_BACKOFF_MILLIS = 250;
+
+    private final Consumer<Map<ObjectId, Integer>> sender;
+    private final int batchSize;
+    private final Duration flushDelay;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder().setNameFormat("label-dispatch-%d").setDaemon(true).build());
+
+    // guarded by this
+    private final Map<ObjectId, Integer> pending = new LinkedHashMap<>();
+    private int inFlight;
+    private long sent;
+    private long failed;
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed;
+
+    /**
+     * @param sender     sends a batch of labels, throwing if it fails; called on the dispatcher thread
+     * @param batchSize  number of pending labels that triggers an immediate send
+     * @param flushDelay how long the first pending label waits for others to join its batch
+     */
+    LabelDispatcher(Consumer<Map<ObjectId, Integer>> sender, int batchSize, Duration flushDelay) {
+        this.sender = sender;
+        this.batchSize = batchSize;
+        this.flushDelay = flushDelay;
+    }
+
+    /**
+     * Queues a label, replacing any label of the same object that has not been sent yet.
+     */
+    synchronized void submit(ObjectId id, int label) {
+        if (closed) {
+            return;
+        }
+
+        // re-insert so the object moves to the end of the batch
+        pending.remove(id);
+        pending.put(id, label);
+
+        if (pending.size() >= batchSize) {
+            schedule(0);
+        } else if (scheduledFlush == null) {
+            schedule(flushDelay.toMillis());
+        }
+    }
+
+    /**
+     * Returns the number of labels queued or being sent.
+     */
+    synchronized int getPendingCount() {
+        return pending.size() + inFlight;
+    }
+
+    synchronized long getSentCount() {
+        return sent;
+    }
+
+    synchronized long getFailedCount() {
+        return failed;
+    }
+
+    /**
+     * Stops sending. Labels that have not been sent yet are dropped, since the search they belong to is over.
+     */
+    void close() {
+        int dropped;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            dropped = pending.size();
+            pending.clear();
+        }
+
+        executor.shutdownNow();
+        log.debug("Sent {} labels, {} failed, {} dropped", getSentCount(), getFailedCount(), dropped);
+    }
+
+    // callers hold the lock
+    private void schedule(long delayMillis) {
+        if (scheduledFlush != null) {
+            if (delayMillis > 0 || scheduledFlush.getDelay(TimeUnit.MILLISECONDS) <= 0) {
+                return;
+            }
+            // a full batch should not wait for the timer
+            if (!scheduledFlush.cancel(false)) {
+                return;
+            }
+        }
+
+        try {
+            scheduledFlush = executor.schedule(this::flush, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // closed
+            scheduledFlush = null;
+        }
+    }
+
+    // dispatcher thread
+    private void flush() {
+        Map<ObjectId, Integer> batch;
+        synchronized (this) {
+            scheduledFlush = null;
+            batch = takeBatch();
+        }
+
+        long backoff = INITIAL_BACKOFF_MILLIS;
+        for (int attempt = 1; !batch.isEmpty(); attempt++) {
+            try {
+                sender.accept(batch);
+                synchronized (this) {
+                    sent += batch.size();
+                    inFlight = 0;
+                }
+                break;
+            } catch (RuntimeException e) {
+                if (attempt == MAX_ATTEMPTS) {
+                    log.warn("Failed to send {} labels, giving up", batch.size(), e);
+                    synchronized (this) {
+                        failed += batch.size();
+                        inFlight = 0;
+                    }
+                    break;
+                }
+                log.info("Failed to send {} labels, retrying in {} ms", batch.size(), backoff, e);
+            }
+
+            try {
+                Thread.sleep(backoff);
+            } catch (InterruptedException e) {
+                // closed while waiting to retry
+                synchronized (this) {
+                    inFlight = 0;
+                }
+                return;
+            }
+            backoff *= 2;
+
+            synchronized (this) {
+                // objects labeled again since will be sent with their new label
+                batch.keySet().removeAll(pending.keySet());
+                inFlight = batch.size();
+            }
+        }
+
+        synchronized (this) {
+            if (!pending.isEmpty() && scheduledFlush == null) {
+                schedule(pending.size() >= batchSize ? 0 : flushDelay.toMillis());
+            }
+        }
+    }
+
+    // callers hold the lock
+    private Map<ObjectId, Integer> takeBatch() {
+        Map<ObjectId, Integer> batch = new LinkedHashMap<>(pending);
+        pending.clear();
+        inFlight = batch.size();
+        return batch;
+    }
+}
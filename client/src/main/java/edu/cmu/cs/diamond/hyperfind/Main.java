@@ -41,8 +41,6 @@
 package edu.cmu.cs.diamond.hyperfind;
 
 import com.fasterxml.jackson.core.type.TypeReference;
-import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
 import edu.cmu.cs.diamond.hyperfind.collaboration.SearchSelector;
 import edu.cmu.cs.diamond.hyperfind.connection.api.Connection;
 import edu.cmu.cs.diamond.hyperfind.connection.api.FeedbackObject;
@@ -57,9 +55,9 @@ import edu.cmu.cs.diamond.hyperfind.connection.api.SearchListenable;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchListener;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
 import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.BundleType;
+import edu.cmu.cs.diamond.hyperfind.connection.replay.RecordingConnection;
 import edu.cmu.cs.diamond.hyperfind.jackson.ObjectMappers;
 import java.awt.Component;
-import java.awt.Cursor;
 import java.awt.Dimension;
 import java.awt.Toolkit;
 import java.awt.datatransfer.Clipboard;
@@ -76,18 +74,18 @@ import java.io.FileNotFoundException;
 import java.io.PrintWriter;
 import java.io.IOException;
 import java.lang.reflect.Field;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Date;
 import java.util.Formatter;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -108,23 +106,38 @@ import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
 import javax.swing.JSeparator;
+import javax.swing.ProgressMonitor;
 import javax.swing.KeyStroke;
 import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.TransferHandler;
 import javax.swing.filechooser.FileNameExtensionFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * The Main class.
  */
 public final class Main {
 
+    private static final Logger log = LoggerFactory.getLogger(Main.class);
+
     private static final String SAVED_SEARCH_EXTENSION = "hyperfindsearch";
-    private static final int IMAGE_DOWNLOAD_BATCH_SIZE = 50;
+
+    private static final int EXPORT_PROGRESS_POLL_MILLIS = 200;
 
     private final ThumbnailBox results;
 
     private final Connection connection;
 
+    private final DetailCache detailCache;
+
+    private final SearchFactoryCache testFactories;
+
+    // the popup still being loaded, if any
+    private PopupLoader popupLoader;
+
     private SearchFactory searchFactory;
 
     private Search search;
@@ -149,6 +162,8 @@ public final class Main {
         this.frame = frame;
         this.connection = connection;
         this.results = results;
+        this.detailCache = results.getDetailCache();
+        this.testFactories = new SearchFactoryCache(connection, ClientSettings.testFactoryCacheSize());
         this.model = model;
         this.examplePredicateFactories = examplePredicateFactories;
         this.codecs = codecs;
@@ -276,9 +291,13 @@ public final class Main {
                                 "Predicate Files, Images",
                                 filteredSuffixes.toArray(new String[0]));
                 // enable filters
-                chooser.setFileFilter(combinedFilter);
-                chooser.addChoosableFileFilter(predicateFilter);
-                chooser.addChoosableFileFilter(imageFilter);
+                if (connection.supportsPredicateFiles()) {
+                    chooser.setFileFilter(combinedFilter);
+                    chooser.addChoosableFileFilter(predicateFilter);
+                    chooser.addChoosableFileFilter(imageFilter);
+                } else {
+                    chooser.setFileFilter(imageFilter);
+                }
                 // show
                 int returnVal = chooser.showOpenDialog(m.frame);
                 if (returnVal == JFileChooser.APPROVE_OPTION) {
@@ -401,7 +420,8 @@ public final class Main {
 
                     // push attributes
                     Set<String> attributes = new HashSet<>();
-                    attributes.add("_rgb_image.rgbimage"); // RGB
+                    // Only what the result list needs. The decoded image and the object data are fetched on demand
+                    // when a result is opened (see detailCache) or exported.
                     attributes.add("thumbnail.jpeg"); // thumbnail
                     attributes.add("_cols.int"); // original width
                     attributes.add("_rows.int"); // original height
@@ -411,7 +431,6 @@ public final class Main {
                     attributes.add("hyperfind.thumbnail-display");
                     attributes.add("hyperfind.external-link");  // an external URL for downloaind the orignal object
                     attributes.add("hyperfind.save-ext"); // a custom file extension to save the object
-                    attributes.add("");
 
                     for (HyperFindSearchMonitor m : monitors) {
                         attributes.addAll(m.getPushAttributes());
@@ -475,35 +494,26 @@ public final class Main {
                 if (exportDirOpt.isPresent()) {
                     Path exportDir = exportDirOpt.get();
 
-                    Map<String, FeedbackObject> map = m.results.getFeedbackItems();
-
-                    Iterables.partition(map.values(), IMAGE_DOWNLOAD_BATCH_SIZE).forEach(batch -> {
-                        Map<ObjectId, SearchResult> results = m.searchFactory.getResults(
-                                batch.stream().map(FeedbackObject::id).collect(Collectors.toSet()),
-                                ImmutableSet.of(SearchResult.DATA_ATTR));
-
-                        for (FeedbackObject object : batch) {
-                            Path subDir = exportDir.resolve(object.label() == 1 ? "positive" : "negative");
-                            subDir.toFile().mkdirs();
+                    Map<ObjectId, Path> targets = new LinkedHashMap<>();
+                    for (FeedbackObject object : m.results.getFeedbackItems().values()) {
+                        Path subDir = exportDir.resolve(object.label() == 1 ? "positive" : "negative");
+                        subDir.toFile().mkdirs();
 
-                            String[] nameSplits = object.id().objectId().split("/");
-                            String filename = nameSplits[nameSplits.length - 1];
+                        String[] nameSplits = object.id().objectId().split("/");
+                        String filename = nameSplits[nameSplits.length - 1];
+                        targets.put(object.id(), subDir.resolve("hyperfind_export_" + filename));
+                    }
 
-                            try {
-                                Files.write(
-                                        subDir.resolve("hyperfind_export_" + filename),
-                                        results.get(object.id()).getData());
-                            } catch (IOException ex) {
-                                ex.printStackTrace();
-                            }
-                        }
-                    });
+                    m.exportResults(targets, exportDir);
                 }
                 m.results.clearFeedBackItems();
             }
         });
 
-        scopeButton.addActionListener(_e -> m.connection.defineScope());
+        scopeButton.addActionListener(_e -> {
+            m.connection.defineScope();
+            m.testFactories.clear();
+        });
 
         JFileChooser chooser = new JFileChooser();
         chooser.setFileFilter(
@@ -724,16 +734,6 @@ public final class Main {
         }
     }
 
-    private void popup(HyperFindResult r) {
-        popup(r.getResult().getName(), PopupPanel.createInstance(this, connection, r, examplePredicateFactories,
-                model));
-    }
-
-    private void popup(HyperFindResult r, Optional<SearchResult> oldResult) {
-        popup(r.getResult().getName(), PopupPanel.createInstance(this, connection, r, examplePredicateFactories, model,
-                oldResult));
-    }
-
     private void popup(String title, PopupPanel p) {
         popupFrame.setVisible(false);
         popupFrame.setTitle(title);
@@ -749,24 +749,115 @@ public final class Main {
         popupFrame.setVisible(true);
     }
 
+    // swaps the contents of the open popup as more of the result is loaded
+    private void replacePopup(PopupPanel p) {
+        popupFrame.setIconImage(p.getImage());
+
+        popupFrame.getContentPane().removeAll();
+        popupFrame.add(p);
+
+        popupFrame.pack();
+        popupFrame.repaint();
+    }
+
+    // downloads the objects in the background, showing progress in a dialog that can cancel the export
+    private void exportResults(Map<ObjectId, Path> targets, Path exportDir) {
+        if (targets.isEmpty()) {
+            return;
+        }
+
+        ResultExporter exporter = new ResultExporter(
+                searchFactory, targets, ClientSettings.exportBatchSize(), ClientSettings.exportMaxBatches());
+        ProgressMonitor progress = new ProgressMonitor(
+                frame,
+                "Exporting " + targets.size() + " labeled results to " + exportDir,
+                null,
+                0,
+                100);
+
+        // polled rather than driven by progress, so a cancel is noticed while a slow object holds progress back
+        Timer poll = new Timer(EXPORT_PROGRESS_POLL_MILLIS, e -> {
+            progress.setProgress(exporter.getProgress());
+            if (progress.isCanceled()) {
+                exporter.cancel(true);
+            }
+        });
+
+        exporter.addPropertyChangeListener(e -> {
+            if (exporter.isDone()) {
+                poll.stop();
+                progress.close();
+            }
+        });
+        exporter.execute();
+        poll.start();
+    }
+
+    /**
+     * Opens a popup for the result right away, showing its thumbnail while the full object is fetched and decoded in
+     * the background. Opening another result cancels the one still loading.
+     */
     void reexecute(HyperFindResult result) {
-        SearchResult prevResult = result.getResult();
-        ObjectId id = prevResult.getId();
-
-        ActivePredicateSet ps = result.getActivePredicateSet();
-        SearchFactory factory = ps.getSearchFactory();
-        Cursor oldCursor = frame.getCursor();
-        // try to render popup using the existing result.
-        // if unsuccessful, try making a connection to Diamond via reexecution
-        try {
-            frame.setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
-            popup(result, Optional.ofNullable(prevResult));
-        } catch (Exception e) {
-            popup(
-                new HyperFindResult(ps, factory.getResult(id, Collections.emptySet())),
-                Optional.ofNullable(prevResult));
-        } finally {
-            frame.setCursor(oldCursor);
+        if (popupLoader != null) {
+            popupLoader.cancel(true);
+        }
+
+        popup(result.getResult().getName(),
+                PopupPanel.createPlaceholder(ThumbnailRenderer.decodeThumbnail(result.getResult()), "Loading..."));
+
+        popupLoader = new PopupLoader(result);
+        popupLoader.execute();
+    }
+
+    private final class PopupLoader extends SwingWorker<PopupPanel.Contents, BufferedImage> {
+
+        private final HyperFindResult result;
+
+        PopupLoader(HyperFindResult result) {
+            this.result = result;
+        }
+
+        @Override
+        protected PopupPanel.Contents doInBackground() {
+            SearchResult prevResult = result.getResult();
+
+            // results in the list never carry the object (see ResultIcon.compact), so fetch it via reexecution
+            ActivePredicateSet ps = result.getActivePredicateSet();
+            SearchResult fullResult = detailCache.getResult(ps.getSearchFactory(), prevResult.getId());
+            return prepare(new HyperFindResult(ps, fullResult), prevResult);
+        }
+
+        private PopupPanel.Contents prepare(HyperFindResult hr, SearchResult prevResult) {
+            BufferedImage img = PopupPanel.extractImageFromResult(hr.getResult());
+            if (img != null) {
+                publish(img);
+            }
+            return PopupPanel.prepare(hr, Optional.of(prevResult), img);
+        }
+
+        @Override
+        protected void process(List<BufferedImage> images) {
+            // the user may have moved on, or closed the popup
+            if (!isCancelled() && popupFrame.isVisible()) {
+                replacePopup(PopupPanel.createPlaceholder(images.get(images.size() - 1), "Loading regions..."));
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled() || !popupFrame.isVisible()) {
+                return;
+            }
+
+            try {
+                replacePopup(PopupPanel.createInstance(Main.this, connection, get(), examplePredicateFactories,
+                        model));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                e.printStackTrace();
+                replacePopup(PopupPanel.createPlaceholder(null, "Failed to load " + result.getResult().getName()));
+            }
         }
     }
 
@@ -776,11 +867,13 @@ public final class Main {
             HyperFindPredicate predicate,
             ObjectId objectID,
             byte[] data) {
-        // Create factory
+        // Create factory, or reuse the one made the last time these filters were tested
         HyperFindPredicate p = (HyperFindPredicate) codecs.getSelectedItem();
         List<Filter> filters = new ArrayList<Filter>(p.createFilters());
         filters.addAll(predicate.createFilters());
-        SearchFactory factory = connection.getSearchFactory(filters);
+        SearchFactory factory = (connection == this.connection)
+                ? testFactories.getSearchFactory(filters)
+                : connection.getSearchFactory(filters);
 
         // Set push attributes for patches and heatmaps
         List<String> filterNames = predicate.getFilterNames();
@@ -827,6 +920,21 @@ public final class Main {
         System.out.println();
     }
 
+    // keeps re-executed results on disk if enabled; the cache is an optimization, so failing to open it is not fatal
+    private static Connection cacheResults(Connection connection) {
+        long maxBytes = ClientSettings.resultCacheBytes();
+        if (maxBytes == 0) {
+            return connection;
+        }
+
+        try {
+            return new DiskCachedConnection(connection, new ResultDiskCache(ClientSettings.resultCacheDir(), maxBytes));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to open result cache, results will not be kept on disk", e);
+            return connection;
+        }
+    }
+
     public static void main(String[] args) throws Exception {
         if (args.length < 1) {
             printUsage();
@@ -836,11 +944,16 @@ public final class Main {
         String[] connnectorArgs = Arrays.stream(args).skip(1).toArray(String[]::new);
         Class<?>[] connnectorArgClasses = Arrays.stream(connnectorArgs).map(c -> String.class).toArray(Class[]::new);
 
-        Connection connection =
+        Connection connector =
                 (Connection) Class.forName(args[0])
                         .getConstructor(connnectorArgClasses)
                         .newInstance((Object[]) connnectorArgs);
 
+        Connection cached = cacheResults(connector);
+        Connection connection = ClientSettings.recordDir()
+                .<Connection>map(dir -> new RecordingConnection(cached, dir))
+                .orElse(cached);
+
         List<SearchInfo> runningSearches = connection.getRunningSearches();
 
         SwingUtilities.invokeLater(() -> {
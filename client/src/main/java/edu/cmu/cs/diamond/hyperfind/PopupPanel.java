@@ -67,7 +67,6 @@ import java.awt.image.DataBufferInt;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.net.URI;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
@@ -89,6 +88,7 @@ import javax.swing.Box;
 import javax.swing.BoxLayout;
 import javax.swing.ComboBoxModel;
 import javax.swing.DefaultListCellRenderer;
+import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JCheckBox;
 import javax.swing.JComboBox;
@@ -102,6 +102,7 @@ import javax.swing.JSplitPane;
 import javax.swing.JTable;
 import javax.swing.JTextArea;
 import javax.swing.ScrollPaneConstants;
+import javax.swing.SwingConstants;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.ListDataEvent;
@@ -128,6 +129,8 @@ public class PopupPanel extends JPanel {
         }
     }
 
+    static final String RGB_IMAGE_ATTR = "_rgb_image.rgbimage";
+
     private static final int PATCH_LIST_MINIMUM_HEIGHT = 300;
 
     private static final int PATCH_LIST_PREFERRED_WIDTH = 300;
@@ -162,16 +165,34 @@ public class PopupPanel extends JPanel {
         }
     }
 
-    public static PopupPanel createInstance(
-            Main m,
-            Connection connection,
-            HyperFindResult hr,
-            List<HyperFindPredicateFactory> examplePredicateFactories,
-            PredicateListModel model,
-            Optional<SearchResult> prevResult) {
+    /**
+     * What a popup shows for a result. Gathering it means decoding the full image and the result's heatmaps, so it
+     * is done by {@link #prepare} off the event dispatch thread.
+     */
+    static final class Contents {
+
+        private final SearchResult result;
+        private final BufferedImage img;
+        private final byte[] data;
+        private final List<ActivePredicate> activePredicates;
+        private final ResultRegions regions;
+
+        private Contents(SearchResult result, BufferedImage img, byte[] data, List<ActivePredicate> activePredicates,
+                ResultRegions regions) {
+            this.result = result;
+            this.img = img;
+            this.data = data;
+            this.activePredicates = activePredicates;
+            this.regions = regions;
+        }
+    }
 
+    /**
+     * Gathers the contents of a popup for {@code hr}, whose image was already decoded into {@code img}. Attributes
+     * missing from {@code hr} are taken from {@code prevResult}.
+     */
+    static Contents prepare(HyperFindResult hr, Optional<SearchResult> prevResult, BufferedImage img) {
         SearchResult r = hr.getResult();
-        BufferedImage img = extractImageFromResult(r);
 
         Set<String> keys = new HashSet<>(r.getKeys());
         prevResult.ifPresent(result -> keys.addAll(result.getKeys()));
@@ -194,18 +215,62 @@ public class PopupPanel extends JPanel {
             }
         }
 
-        return createInstance(
-                m,
-                connection,
-                Optional.of(new SearchResult(r.getId(), attributes, Optional.empty())),
+        return new Contents(
+                new SearchResult(r.getId(), attributes, Optional.empty()),
                 img,
                 r.getData(),
                 hr.getActivePredicateSet().getActivePredicates(),
+                hr.getRegions());
+    }
+
+    public static PopupPanel createInstance(
+            Main m,
+            Connection connection,
+            HyperFindResult hr,
+            List<HyperFindPredicateFactory> examplePredicateFactories,
+            PredicateListModel model,
+            Optional<SearchResult> prevResult) {
+        Contents contents = prepare(hr, prevResult, extractImageFromResult(hr.getResult()));
+        return createInstance(m, connection, contents, examplePredicateFactories, model);
+    }
+
+    static PopupPanel createInstance(
+            Main m,
+            Connection connection,
+            Contents contents,
+            List<HyperFindPredicateFactory> examplePredicateFactories,
+            PredicateListModel model) {
+        return createInstance(
+                m,
+                connection,
+                Optional.of(contents.result),
+                contents.img,
+                contents.data,
+                contents.activePredicates,
                 examplePredicateFactories,
-                hr.getRegions(),
+                contents.regions,
                 model);
     }
 
+    /**
+     * Creates a panel that stands in for a popup while it loads, showing {@code img} (if any) above a message.
+     */
+    static PopupPanel createPlaceholder(BufferedImage img, String message) {
+        PopupPanel p = new PopupPanel(img);
+        p.setLayout(new BorderLayout());
+        if (img != null) {
+            JLabel image = new JLabel(new ImageIcon(img));
+            JScrollPane scrollPane = new JScrollPane(image);
+            scrollPane.getHorizontalScrollBar().setUnitIncrement(20);
+            scrollPane.getVerticalScrollBar().setUnitIncrement(20);
+            p.add(scrollPane);
+        }
+        JLabel label = new JLabel(message, SwingConstants.CENTER);
+        label.setBorder(BorderFactory.createEmptyBorder(5, 5, 5, 5));
+        p.add(label, img == null ? BorderLayout.CENTER : BorderLayout.SOUTH);
+        return p;
+    }
+
     public static PopupPanel createInstance(
             Main m,
             Connection connection,
@@ -363,30 +428,31 @@ public class PopupPanel extends JPanel {
     }
 
     // TODO(hturki): Dedupe from opendiamond-java's Utils class
-    private static BufferedImage extractImageFromResult(SearchResult r) {
+    static BufferedImage extractImageFromResult(SearchResult r) {
         // first, try rgbimage
-        Optional<byte[]> rgbimage = r.getBytes("_rgb_image.rgbimage");
+        Optional<byte[]> rgbimage = r.getBytes(RGB_IMAGE_ATTR);
         if (rgbimage.isPresent()) {
-            return decodeRGBImage(rgbimage.get());
+            return DecodedImageCache.shared().get(RGB_IMAGE_ATTR, rgbimage.get(), () -> decodeRGBImage(rgbimage.get()));
         }
 
         // then, try ImageIO
         byte[] data = r.getData();
         if (data != null) {
-            InputStream in = new ByteArrayInputStream(data);
-            try {
-                return ImageIO.read(in);
-            } catch (IOException e) {
-                e.printStackTrace();
-                return null;
-            }
+            return DecodedImageCache.shared().get(SearchResult.DATA_ATTR, data, () -> {
+                try {
+                    return ImageIO.read(new ByteArrayInputStream(data));
+                } catch (IOException e) {
+                    e.printStackTrace();
+                    return null;
+                }
+            });
         }
 
         return null;
     }
 
     // TODO(hturki): Dedupe from opendiamond-java's Utils class
-    private static BufferedImage decodeRGBImage(byte[] rgbimage) {
+    static BufferedImage decodeRGBImage(byte[] rgbimage) {
         ByteBuffer buf = ByteBuffer.wrap(rgbimage);
         buf.order(ByteOrder.LITTLE_ENDIAN);
 
@@ -0,0 +1,196 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Three-stage pipeline between the thread fetching search results and the result list. The fetch thread hands items
+ * to {@link #submit(Object)}, a pool of worker threads converts them, and a single publisher thread passes the
+ * converted items to the sink either in submission order or as soon as each one is ready.
+ *
+ * <p>At most {@code capacity} items may be in the pipeline at once; beyond that {@link #submit(Object)} blocks, so a
+ * slow consumer throttles the fetch thread rather than buffering results without bound. Items whose conversion
+ * throws are logged and dropped.
+ */
+final class RenderPipeline<I, O> {
+
+    private static final Logger log = LoggerFactory.getLogger(RenderPipeline.class);
+
+    private final Function<I, O> converter;
+    private final Consumer<O> sink;
+    private final boolean ordered;
+    private final int capacity;
+
+    private final Semaphore slots;
+    private final ThreadPoolExecutor workers;
+    private final BlockingQueue<Future<O>> completed = new LinkedBlockingQueue<>();
+    private final Future<O> endMarker = new FutureTask<>(() -> null);
+    private final Thread publisher;
+
+    RenderPipeline(String name, int threads, int capacity, boolean ordered, Function<I, O> converter,
+            Consumer<O> sink) {
+        this.converter = converter;
+        this.sink = sink;
+        this.ordered = ordered;
+        this.capacity = capacity;
+        this.slots = new Semaphore(capacity);
+        this.workers = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat(name + "-worker-%d").setDaemon(true).build());
+        this.publisher = new Thread(this::publish, name + "-publisher");
+        this.publisher.setDaemon(true);
+        this.publisher.start();
+    }
+
+    /**
+     * Queues an item for conversion, blocking while the pipeline is full.
+     */
+    void submit(I item) throws InterruptedException {
+        slots.acquire();
+
+        Callable<O> task = () -> converter.apply(item);
+        if (ordered) {
+            FutureTask<O> future = new FutureTask<>(task);
+            completed.put(future);
+            workers.execute(future);
+        } else {
+            workers.execute(new FutureTask<>(task) {
+                @Override
+                protected void done() {
+                    completed.add(this);
+                }
+            });
+        }
+    }
+
+    /**
+     * Blocks until every item submitted so far has been handed to the sink.
+     */
+    void flush() throws InterruptedException {
+        slots.acquire(capacity);
+        slots.release(capacity);
+    }
+
+    /**
+     * Waits for the submitted items to be published and releases the pipeline's threads.
+     */
+    void finish() throws InterruptedException {
+        try {
+            flush();
+            completed.put(endMarker);
+            publisher.join();
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    /**
+     * Drops everything still in the pipeline and stops its threads.
+     */
+    void cancel() {
+        workers.shutdownNow();
+        publisher.interrupt();
+    }
+
+    /**
+     * @return number of items waiting for a worker thread
+     */
+    int getConvertQueueDepth() {
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return number of items currently being converted
+     */
+    int getActiveCount() {
+        return workers.getActiveCount();
+    }
+
+    /**
+     * @return number of items converted (or, in ordered mode, submitted) but not yet handed to the sink
+     */
+    int getPublishQueueDepth() {
+        return completed.size();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("convert queue %d, converting %d, publish queue %d",
+                getConvertQueueDepth(), getActiveCount(), getPublishQueueDepth());
+    }
+
+    private void publish() {
+        try {
+            while (true) {
+                Future<O> future = completed.take();
+                if (future == endMarker) {
+                    return;
+                }
+
+                try {
+                    sink.accept(future.get());
+                } catch (ExecutionException e) {
+                    log.error("Failed to process result", e.getCause());
+                } catch (RuntimeException e) {
+                    log.error("Failed to publish result", e);
+                } finally {
+                    slots.release();
+                }
+            }
+        } catch (InterruptedException e) {
+            // cancelled
+        }
+    }
+}
@@ -0,0 +1,295 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps re-executed results on disk, so that exporting, reopening or dragging out an object fetched earlier, even in
+ * an earlier session, does not run the filters on the server again.
+ *
+ * <p>Each result is one file named after a hash of the filters that produced it, its id and the attributes asked
+ * for, holding its border color and its attributes in the {@link SearchResult#toBuffer()} format. Files are memory
+ * mapped when read, so the attribute values are not copied onto the heap. The least recently used files are deleted
+ * once the directory grows past its size limit; file modification times record use across sessions.
+ *
+ * <p>Because results read from the cache map their file, an evicted file may still be mapped by a result that is in
+ * use. Most platforms then delete the name but keep the disk space until the mapping is garbage collected; on Windows
+ * the delete fails and the file stays behind until a later session evicts it again. The size limit is therefore only
+ * approximate while results are in use.
+ *
+ * <p>The cache is best effort: files that can't be read or written are logged and treated as misses. Temporary files
+ * left by a client that died while writing a result are deleted at startup.
+ */
+final class ResultDiskCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultDiskCache.class);
+
+    private static final String SUFFIX = ".hfres";
+    private static final int MAGIC = 0x48465253;
+    private static final int HEADER_BYTES = 3 * Integer.BYTES;
+    private static final String TEMP_PREFIX = "result-";
+    private static final String TEMP_SUFFIX = ".tmp";
+    // younger temporary files may still be written by another client sharing the directory
+    private static final Duration STALE_TEMP_AGE = Duration.ofHours(1);
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // file name -> size, least recently used first; guarded by this
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes;
+
+    ResultDiskCache(Path directory, long maxBytes) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.maxBytes = maxBytes;
+        load();
+    }
+
+    /**
+     * Returns a key for a result of the given filters, object and attributes.
+     */
+    static String key(String filterFingerprint, ObjectId id, Set<String> attributes) {
+        Hasher hasher = Hashing.sha256().newHasher()
+                .putString(filterFingerprint, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(id.hostname(), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(id.deviceName(), StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(id.objectId(), StandardCharsets.UTF_8).putByte((byte) 0);
+        for (String attribute : new TreeSet<>(attributes)) {
+            hasher.putString(attribute, StandardCharsets.UTF_8).putByte((byte) 0);
+        }
+        return hasher.hash().toString();
+    }
+
+    Optional<SearchResult> get(String key, ObjectId id) {
+        String name = key + SUFFIX;
+        synchronized (this) {
+            if (index.get(name) == null) {
+                return Optional.empty();
+            }
+        }
+
+        Path path = directory.resolve(name);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.remaining() < HEADER_BYTES || buffer.getInt() != MAGIC) {
+                throw new IOException("Not a cached result: " + path);
+            }
+            boolean hasBorderColor = buffer.getInt() != 0;
+            int rgb = buffer.getInt();
+            Optional<Color> borderColor = hasBorderColor ? Optional.of(new Color(rgb, true)) : Optional.empty();
+
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+            return Optional.of(SearchResult.fromBuffer(id, buffer.slice(), borderColor));
+        } catch (NoSuchFileException e) {
+            // evicted while we were looking it up
+            forget(name);
+            return Optional.empty();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to read cached result {}", path, e);
+            delete(name);
+            return Optional.empty();
+        }
+    }
+
+    void put(String key, SearchResult result) {
+        String name = key + SUFFIX;
+        Path path = directory.resolve(name);
+        ByteBuffer attributes = result.toBuffer();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES)
+                .putInt(MAGIC)
+                .putInt(result.getBorderColor().isPresent() ? 1 : 0)
+                .putInt(result.getBorderColor().map(Color::getRGB).orElse(0))
+                .flip();
+
+        Path temp = null;
+        try {
+            temp = Files.createTempFile(directory, TEMP_PREFIX, TEMP_SUFFIX);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                ByteBuffer[] buffers = {header, attributes};
+                while (attributes.hasRemaining()) {
+                    channel.write(buffers);
+                }
+            }
+
+            synchronized (this) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Long previous = index.put(name, Files.size(path));
+                totalBytes += index.get(name) - (previous == null ? 0 : previous);
+                evict();
+            }
+        } catch (IOException e) {
+            log.warn("Failed to cache result {}", result.getId(), e);
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException ex) {
+                    log.debug("Failed to delete {}", temp, ex);
+                }
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ResultDiskCache{directory=" + directory + ", results=" + index.size() + ", bytes=" + totalBytes + "}";
+    }
+
+    // callers hold the lock
+    private void evict() {
+        Iterator<Map.Entry<String, Long>> eldest = index.entrySet().iterator();
+        while (totalBytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<String, Long> entry = eldest.next();
+            eldest.remove();
+            totalBytes -= entry.getValue();
+            try {
+                Files.deleteIfExists(directory.resolve(entry.getKey()));
+            } catch (IOException e) {
+                // most likely still mapped (Windows); the next session finds and evicts it again
+                log.warn("Failed to evict cached result {}", entry.getKey(), e);
+            }
+        }
+    }
+
+    private synchronized void forget(String name) {
+        Long size = index.remove(name);
+        if (size != null) {
+            totalBytes -= size;
+        }
+    }
+
+    private void delete(String name) {
+        forget(name);
+        try {
+            Files.deleteIfExists(directory.resolve(name));
+        } catch (IOException e) {
+            log.debug("Failed to delete cached result {}", name, e);
+        }
+    }
+
+    // picks up the results of earlier sessions, oldest first
+    private void load() throws IOException {
+        deleteStaleTempFiles();
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().endsWith(SUFFIX))
+                    .map(ResultDiskCache::readAttributes)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .sorted(Comparator.comparing(f -> f.attributes.lastModifiedTime()))
+                    .forEach(f -> {
+                        index.put(f.path.getFileName().toString(), f.attributes.size());
+                        totalBytes += f.attributes.size();
+                    });
+        }
+
+        synchronized (this) {
+            evict();
+        }
+        log.info("Loaded {}", this);
+    }
+
+    private void deleteStaleTempFiles() throws IOException {
+        FileTime cutoff = FileTime.fromMillis(System.currentTimeMillis() - STALE_TEMP_AGE.toMillis());
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(p -> p.getFileName().toString().startsWith(TEMP_PREFIX)
+                            && p.getFileName().toString().endsWith(TEMP_SUFFIX))
+                    .map(ResultDiskCache::readAttributes)
+                    .filter(Optional::isPresent)
+                    .map(Optional::get)
+                    .filter(f -> f.attributes.lastModifiedTime().compareTo(cutoff) < 0)
+                    .forEach(f -> {
+                        try {
+                            Files.deleteIfExists(f.path);
+                            log.info("Deleted stale temporary file {}", f.path);
+                        } catch (IOException e) {
+                            log.debug("Failed to delete {}", f.path, e);
+                        }
+                    });
+        }
+    }
+
+    private static Optional<CachedFile> readAttributes(Path path) {
+        try {
+            return Optional.of(new CachedFile(path, Files.readAttributes(path, BasicFileAttributes.class)));
+        } catch (IOException e) {
+            // deleted by another client sharing the directory
+            return Optional.empty();
+        }
+    }
+
+    private static final class CachedFile {
+
+        private final Path path;
+        private final BasicFileAttributes attributes;
+
+        CachedFile(Path path, BasicFileAttributes attributes) {
+            this.path = path;
+            this.attributes = attributes;
+        }
+    }
+}
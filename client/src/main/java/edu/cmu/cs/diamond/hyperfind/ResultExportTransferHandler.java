@@ -38,42 +38,66 @@
  *  which carries forward this exception.
  */
 
+
 package edu.cmu.cs.diamond.hyperfind;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
-import com.google.common.collect.Iterables;
-import com.google.common.io.Files;
+import com.google.common.collect.Lists;
 import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ResultCallback;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.awt.SecondaryLoop;
+import java.awt.Toolkit;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.Transferable;
 import java.awt.datatransfer.UnsupportedFlavorException;
-import java.io.File;
+import java.beans.PropertyChangeListener;
 import java.io.IOException;
-import java.net.URI;
+import java.io.UncheckedIOException;
 import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
-import java.util.stream.StreamSupport;
 import javax.swing.JComponent;
 import javax.swing.JList;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
 import javax.swing.TransferHandler;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.FilenameUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
- * Handles content export when drag from ResultList. Images are first downloaded to a temp directory. A URI list is
- * return.
+ * Handles content export when drag from ResultList. Images are downloaded to a temp directory in the background as
+ * soon as the drag starts, with a cancellable progress dialog, and a URI list of the files is returned once they are
+ * all written. A drop that comes before then keeps dispatching events while it waits, so the dialog stays live. Files
+ * written for earlier drags of the same search are reused while they are still on disk.
  */
 public class ResultExportTransferHandler extends TransferHandler {
 
+    private static final Logger log = LoggerFactory.getLogger(ResultExportTransferHandler.class);
+
     private static final DataFlavor URI_LIST_FLAVOR =
             new DataFlavor("text/uri-list; class=java.lang.String", "URI list");
 
@@ -84,8 +108,15 @@ public class ResultExportTransferHandler extends TransferHandler {
 
     private static final int IMAGE_DOWNLOAD_BATCH_SIZE = 50;
 
+    // downloads are copied in chunks so that a cancelled export stops between them
+    private static final long TRANSFER_CHUNK_BYTES = 1 << 20;
+
+    // how often the progress dialog is updated and checked for cancellation, even when no file has finished
+    private static final int PROGRESS_POLL_MILLIS = 200;
+
     private final SearchFactory factory;
     private final ExecutorService executor;
+    private final Map<ObjectId, Path> exported = new ConcurrentHashMap<>();
 
     public ResultExportTransferHandler(SearchFactory factory, ExecutorService executor) {
         this.factory = factory;
@@ -101,95 +132,177 @@ public class ResultExportTransferHandler extends TransferHandler {
     @SuppressWarnings("unchecked")
     protected Transferable createTransferable(JComponent c) {
         JList<ResultIcon> list = (JList<ResultIcon>) c;
-        List<ResultIcon> results = list.getSelectedValuesList();
-        ExportTransferable t = new ExportTransferable(results);
-
-        // force the computation in the UI thread here to avoid terrible
-        // drag and drop race conditions
-        try {
-            t.uriFutures.get();
-        } catch (InterruptedException | ExecutionException e) {
-            throw new RuntimeException("Failed to get uris", e);
+        List<SearchResult> results = list.getSelectedValuesList().stream()
+                .map(icon -> icon.getResult().getResult())
+                .collect(Collectors.toList());
+        if (results.isEmpty()) {
+            return null;
         }
 
-        return t;
+        ExportWorker worker = new ExportWorker(results);
+        ProgressMonitor progress = new ProgressMonitor(c, "Exporting " + results.size() + " results", null, 0, 100);
+
+        Timer poll = new Timer(PROGRESS_POLL_MILLIS, e -> {
+            progress.setProgress(worker.getProgress());
+            if (progress.isCanceled()) {
+                worker.cancel(true);
+            }
+        });
+
+        worker.addPropertyChangeListener(e -> {
+            if (worker.isDone()) {
+                poll.stop();
+                progress.close();
+            }
+        });
+        worker.execute();
+        poll.start();
+
+        return new ExportTransferable(worker);
     }
 
-    private class ExportTransferable implements Transferable {
+    @Override
+    protected void exportDone(JComponent source, Transferable data, int action) {
+        // nothing was dropped, so nobody will ask for the files
+        if (action == NONE && data instanceof ExportTransferable) {
+            ((ExportTransferable) data).worker.cancel(true);
+        }
+    }
 
-        private final Future<String> uriFutures;
+    private final class ExportWorker extends SwingWorker<String, Void> {
+
+        private final List<SearchResult> results;
+        private final AtomicInteger done = new AtomicInteger();
+
+        ExportWorker(List<SearchResult> results) {
+            this.results = results;
+        }
 
-        public ExportTransferable(List<ResultIcon> resultIcons) {
-            List<Future<File>> externalDownloadFutures = new ArrayList<>();
+        @Override
+        protected String doInBackground() throws Exception {
+            List<Future<List<Path>>> files = new ArrayList<>();
             List<ObjectId> toReexecute = new ArrayList<>();
 
-            for (ResultIcon icon : resultIcons) {
-                // if the attribute "hyperfind.external-link" is present, use it as download link
-                SearchResult result = icon.getResult().getResult();
+            for (SearchResult result : results) {
+                ObjectId id = result.getId();
+                Path existing = exported.get(id);
                 Optional<String> externalLink = result.getString("hyperfind.external-link");
-                if (externalLink.isPresent()) {
-                    externalDownloadFutures.add(executor.submit(() -> {
-                        String downloadLink = externalLink.get();
-                        System.out.println("Downloading from " + downloadLink);
-                        URL url = new URL(downloadLink);
-                        File file =
-                                File.createTempFile("hyperfind-export-", "-" + FilenameUtils.getName(url.getFile()));
-                        file.deleteOnExit();
-                        FileUtils.copyURLToFile(url, file);
-                        return file;
-                    }));
-                } else if (result.getBytes(SearchResult.DATA_ATTR).isPresent()) {
+                Optional<ByteBuffer> data = result.getBuffer(SearchResult.DATA_ATTR);
+
+                if (existing != null && Files.exists(existing)) {
+                    files.add(CompletableFuture.completedFuture(List.of(existing)));
+                    fileDone();
+                } else if (externalLink.isPresent()) {
+                    // if the attribute "hyperfind.external-link" is present, use it as download link
+                    files.add(executor.submit(() -> List.of(download(id, new URL(externalLink.get())))));
+                } else if (data.isPresent()) {
                     // save to disk without re-execute if the '' attr is present
-                    externalDownloadFutures.add(executor.submit( () -> {
-                        String ext = result.getString("hyperfind.save-ext").orElse("jpg");
-                        System.out.println("Skip re-execution. Saving the '' attr to disk using ext: " + ext);
-                        File file = File.createTempFile("hyperfind-export-", "."+ext);
-                        file.deleteOnExit();
-                        Files.write(result.getData(), file);
-                        return file;
-                    }));
-                }
-                 else {
-                    toReexecute.add(result.getId());
+                    String ext = result.getString("hyperfind.save-ext").orElse("jpg");
+                    files.add(executor.submit(() -> List.of(write(id, data.get(), "." + ext))));
+                } else {
+                    toReexecute.add(id);
                 }
             }
 
-            Future<List<File>> downloadFuture = executor.submit(() -> StreamSupport.stream(
-                    Iterables.partition(toReexecute, IMAGE_DOWNLOAD_BATCH_SIZE).spliterator(),
-                    false)
-                    .flatMap(ids -> factory.getResults(ids, ImmutableSet.of(SearchResult.DATA_ATTR)).entrySet().stream()
-                            .map(entry -> writeToFile(entry.getKey(), entry.getValue().getData())))
-                    .collect(Collectors.toList()));
+            for (List<ObjectId> ids : Lists.partition(toReexecute, IMAGE_DOWNLOAD_BATCH_SIZE)) {
+                files.add(executor.submit(() -> reexecute(ids)));
+            }
 
-            uriFutures = executor.submit(() -> {
+            try {
                 StringBuilder sb = new StringBuilder();
-
-                for (Future<File> future : externalDownloadFutures) {
-                    File f = future.get();
-                    URI u = f.toURI();
-                    sb.append(u.toASCIIString()).append("\r\n");
+                for (Future<List<Path>> future : files) {
+                    for (Path path : future.get()) {
+                        sb.append(path.toFile().toURI().toASCIIString()).append("\r\n");
+                    }
                 }
+                return sb.toString();
+            } finally {
+                // stops the remaining downloads if the export was cancelled or one of them failed
+                files.forEach(f -> f.cancel(true));
+            }
+        }
 
-                for (File file : downloadFuture.get()) {
-                    URI u = file.toURI();
-                    sb.append(u.toASCIIString()).append("\r\n");
+        // each object is written as soon as it arrives; objects that fail are left out of the drop
+        private List<Path> reexecute(List<ObjectId> ids) {
+            List<Path> paths = Collections.synchronizedList(new ArrayList<>(ids.size()));
+            factory.getResults(ids, ImmutableSet.of(SearchResult.DATA_ATTR), new ResultCallback() {
+                @Override
+                public void onResult(ObjectId objectId, SearchResult result) {
+                    try {
+                        ByteBuffer data = result.getBuffer(SearchResult.DATA_ATTR)
+                                .orElseThrow(() -> new IOException("No data returned for " + objectId.objectId()));
+                        paths.add(write(objectId, data, "." + FilenameUtils.getExtension(objectId.objectId())));
+                    } catch (IOException e) {
+                        onFailure(objectId, new UncheckedIOException(e));
+                    }
                 }
 
-                return sb.toString();
+                @Override
+                public void onFailure(ObjectId objectId, RuntimeException error) {
+                    log.warn("Failed to export {}", objectId.objectId(), error);
+                    fileDone();
+                }
             });
+            return paths;
         }
 
-        private File writeToFile(ObjectId id, byte[] data) {
-            try {
-                String ext = FilenameUtils.getExtension(id.objectId());
-                File file = File.createTempFile("hyperfind-export-", "." + ext);
-                file.deleteOnExit();
-                Files.write(data, file);
+        private Path download(ObjectId id, URL url) throws IOException {
+            log.info("Downloading from {}", url);
+            Path path = createTempFile("-" + FilenameUtils.getName(url.getFile()));
+
+            try (ReadableByteChannel in = Channels.newChannel(url.openStream());
+                    FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                long position = 0;
+                long transferred;
+                while ((transferred = out.transferFrom(in, position, TRANSFER_CHUNK_BYTES)) > 0) {
+                    position += transferred;
+                }
+            } catch (IOException e) {
+                Files.deleteIfExists(path);
+                throw e;
+            }
+
+            return exported(id, path);
+        }
+
+        private Path write(ObjectId id, ByteBuffer data, String suffix) throws IOException {
+            Path path = createTempFile(suffix);
 
-                return file;
+            try (FileChannel out = FileChannel.open(path, StandardOpenOption.WRITE)) {
+                while (data.hasRemaining()) {
+                    out.write(data);
+                }
             } catch (IOException e) {
-                throw new RuntimeException("Failed to write image", e);
+                Files.deleteIfExists(path);
+                throw e;
             }
+
+            return exported(id, path);
+        }
+
+        private Path exported(ObjectId id, Path path) {
+            exported.put(id, path);
+            fileDone();
+            return path;
+        }
+
+        private void fileDone() {
+            setProgress(100 * done.incrementAndGet() / results.size());
+        }
+    }
+
+    private static Path createTempFile(String suffix) throws IOException {
+        Path path = Files.createTempFile("hyperfind-export-", suffix);
+        path.toFile().deleteOnExit();
+        return path;
+    }
+
+    private static final class ExportTransferable implements Transferable {
+
+        private final ExportWorker worker;
+
+        ExportTransferable(ExportWorker worker) {
+            this.worker = worker;
         }
 
         @Override
@@ -203,16 +316,49 @@ public class ResultExportTransferHandler extends TransferHandler {
         }
 
         @Override
-        public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException {
+        public Object getTransferData(DataFlavor flavor) throws UnsupportedFlavorException, IOException {
+            if (!isDataFlavorSupported(flavor)) {
+                throw new UnsupportedFlavorException(flavor);
+            }
 
+            // only waits for the downloads still running when the drop happens
+            awaitWorker();
             try {
-                if (flavor.equals(URI_LIST_FLAVOR) || flavor.equals(TEXT_PLAIN_FLAVOR)) {
-                    return uriFutures.get();
-                } else {
-                    throw new UnsupportedFlavorException(flavor);
+                return worker.get();
+            } catch (CancellationException e) {
+                throw new IOException("Export was cancelled", e);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while exporting results", e);
+            } catch (ExecutionException e) {
+                throw new IOException("Failed to export results", e.getCause());
+            }
+        }
+
+        /**
+         * Runs a nested event loop on the event dispatch thread until the export is done, so the progress dialog
+         * keeps painting and can still cancel it while the drop waits.
+         */
+        private void awaitWorker() {
+            if (!SwingUtilities.isEventDispatchThread() || worker.isDone()) {
+                return;
+            }
+
+            SecondaryLoop loop = Toolkit.getDefaultToolkit().getSystemEventQueue().createSecondaryLoop();
+            // the worker reports that it is done on the event dispatch thread, so this cannot fire before enter()
+            PropertyChangeListener listener = e -> {
+                if (worker.isDone()) {
+                    loop.exit();
+                }
+            };
+
+            worker.addPropertyChangeListener(listener);
+            try {
+                if (!worker.isDone()) {
+                    loop.enter();
                 }
-            } catch (InterruptedException | ExecutionException e) {
-                throw new RuntimeException("Failed to get transfer data", e);
+            } finally {
+                worker.removePropertyChangeListener(listener);
             }
         }
     }
@@ -0,0 +1,244 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ResultCallback;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.swing.SwingWorker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Downloads the data of result objects to files in the background. Objects are requested from the search factory in
+ * batches, which spreads each batch over the servers, and every object is written as soon as it arrives, so a slow
+ * object doesn't hold up the rest of its batch. Several batches are in flight at once, so the next one is already
+ * being fetched while the last objects of the previous one come in. How many adapts to how the servers respond: it
+ * grows while batches stay fast and backs off when they slow down or fail.
+ *
+ * <p>Progress is reported through {@link #setProgress(int)} as a percentage of the objects done, and the export is
+ * stopped with {@link #cancel(boolean)}, which is checked between objects. The result is the number of files written.
+ */
+final class ResultExporter extends SwingWorker<Integer, Void> {
+
+    private static final Logger log = LoggerFactory.getLogger(ResultExporter.class);
+
+    // one batch ahead of the one being written
+    private static final int INITIAL_BATCHES = 2;
+
+    private final SearchFactory factory;
+    private final Map<ObjectId, Path> targets;
+    private final int batchSize;
+    private final int maxBatches;
+
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger written = new AtomicInteger();
+
+    ResultExporter(SearchFactory factory, Map<ObjectId, Path> targets, int batchSize, int maxBatches) {
+        this.factory = factory;
+        this.targets = new LinkedHashMap<>(targets);
+        this.batchSize = batchSize;
+        this.maxBatches = maxBatches;
+    }
+
+    @Override
+    protected Integer doInBackground() throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(
+                maxBatches,
+                new ThreadFactoryBuilder().setNameFormat("result-export-%d").setDaemon(true).build());
+        CompletionService<OptionalLong> completion = new ExecutorCompletionService<>(executor);
+        ConcurrencyLimit limit = new ConcurrencyLimit(Math.min(INITIAL_BATCHES, maxBatches), maxBatches);
+
+        Iterator<List<ObjectId>> pending = Lists.partition(new ArrayList<>(targets.keySet()), batchSize).iterator();
+        int inFlight = 0;
+
+        try {
+            while ((pending.hasNext() && !isCancelled()) || inFlight > 0) {
+                while (pending.hasNext() && !isCancelled() && inFlight < limit.get()) {
+                    List<ObjectId> batch = pending.next();
+                    completion.submit(() -> export(batch));
+                    inFlight++;
+                }
+
+                Future<OptionalLong> future = completion.take();
+                inFlight--;
+
+                try {
+                    OptionalLong latency = future.get();
+                    if (latency.isPresent()) {
+                        limit.onSuccess(latency.getAsLong());
+                    } else {
+                        limit.onFailure();
+                    }
+                } catch (ExecutionException e) {
+                    limit.onFailure();
+                    log.error("Failed to export batch", e.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        log.info("Exported {} of {} results", written.get(), targets.size());
+        return written.get();
+    }
+
+    // returns how long the batch took per object, in nanoseconds, or nothing if any of its objects failed
+    private OptionalLong export(List<ObjectId> batch) {
+        long start = System.nanoTime();
+        AtomicInteger failures = new AtomicInteger();
+
+        factory.getResults(batch, Set.of(SearchResult.DATA_ATTR), new ResultCallback() {
+            @Override
+            public void onResult(ObjectId objectId, SearchResult result) {
+                // the rest of a cancelled batch still arrives, but is no longer written
+                if (isCancelled()) {
+                    return;
+                }
+
+                try {
+                    write(objectId, result);
+                    written.incrementAndGet();
+                } catch (IOException e) {
+                    log.error("Failed to export result {}", objectId.objectId(), e);
+                }
+                objectDone();
+            }
+
+            @Override
+            public void onFailure(ObjectId objectId, RuntimeException error) {
+                log.error("Failed to export result {}", objectId.objectId(), error);
+                failures.incrementAndGet();
+                objectDone();
+            }
+        });
+
+        return failures.get() > 0
+                ? OptionalLong.empty()
+                : OptionalLong.of((System.nanoTime() - start) / batch.size());
+    }
+
+    private void write(ObjectId id, SearchResult result) throws IOException {
+        Path path = targets.get(id);
+        ByteBuffer data = result.getBuffer(SearchResult.DATA_ATTR)
+                .orElseThrow(() -> new IOException("No data returned for " + id.objectId()));
+
+        try (FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+        } catch (IOException e) {
+            Files.deleteIfExists(path);
+            throw e;
+        }
+    }
+
+    private void objectDone() {
+        setProgress(100 * done.incrementAndGet() / targets.size());
+    }
+
+    /**
+     * Additive increase, multiplicative decrease: one more batch in flight after each round of batches that were
+     * about as fast per object as the fastest seen so far, one less when a batch is much slower, and half as many
+     * when objects fail.
+     */
+    private static final class ConcurrencyLimit {
+
+        private final int max;
+
+        private int limit;
+        private int successes = 0;
+        private long minLatency = Long.MAX_VALUE;
+
+        ConcurrencyLimit(int initial, int max) {
+            this.limit = initial;
+            this.max = max;
+        }
+
+        int get() {
+            return limit;
+        }
+
+        void onSuccess(long latency) {
+            minLatency = Math.min(minLatency, latency);
+
+            if (latency > 2 * minLatency) {
+                limit = Math.max(1, limit - 1);
+                successes = 0;
+            } else if (++successes >= limit) {
+                limit = Math.min(max, limit + 1);
+                successes = 0;
+            }
+        }
+
+        void onFailure() {
+            limit = Math.max(1, limit / 2);
+            successes = 0;
+        }
+    }
+}
@@ -40,25 +40,38 @@
 
 package edu.cmu.cs.diamond.hyperfind;
 
-import java.awt.Graphics2D;
-import java.awt.Image;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.awt.Color;
+import java.awt.Component;
+import java.awt.Dimension;
+import java.awt.Graphics;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import javax.imageio.ImageIO;
 import javax.swing.Icon;
-import javax.swing.ImageIcon;
 
 class ResultIcon {
 
-    private final HyperFindResult result;
+    // attributes large enough to matter that the result list never looks at
+    private static final String[] BULKY_ATTRIBUTES = {"_rgb_image.rgbimage", SearchResult.DATA_ATTR};
+
+    private volatile HyperFindResult result;
 
     private final String name;
 
     private final ResultIconSetting displaySelection;
 
-    private final BufferedImage originalImage;
+    private static final Color PLACEHOLDER_COLOR = new Color(0xe0e0e0);
+
+    private final ThumbnailLoader thumbnails;
+
+    private final Icon thumbnail = new ThumbnailIcon();
+
+    private final int width;
+
+    private final int height;
 
     private static final BufferedImage checkMarkImage;
 
@@ -66,9 +79,7 @@ class ResultIcon {
 
     private static final BufferedImage questionMarkImage;
 
-    private ImageIcon icon;
-
-    private ResultType type;
+    private volatile ResultType type;
 
     static {
         BufferedImage check = null;
@@ -122,85 +133,84 @@ class ResultIcon {
         }
     }
 
-    public ResultIcon(HyperFindResult result, String name, ImageIcon icon,
-            ResultIconSetting displaySelection, int resultType) {
-        this.result = result;
-        this.name = name;
-        this.icon = icon;
-        this.displaySelection = displaySelection;
-        this.originalImage = (icon == null) ? null : setOriginal();
-        this.type = ResultType.getType(resultType);
-        //resize before displaying
-        if (icon != null) {
-            drawOverlay(type);
-        }
+    /**
+     * @param image the rendered thumbnail; it is only held by the loader's cache, and re-rendered from the result
+     *              when evicted
+     */
+    public ResultIcon(HyperFindResult result, String name, BufferedImage image,
+            ResultIconSetting displaySelection, ThumbnailLoader thumbnails, int resultType) {
+        this(result, name, (image == null) ? new Dimension() : new Dimension(image.getWidth(), image.getHeight()),
+                image, displaySelection, thumbnails, resultType);
     }
 
-    public ResultIcon(HyperFindResult result, String name, ImageIcon icon,
-            ResultIconSetting displaySelection) {
-        this(result, name, icon, displaySelection, 2);
+    public ResultIcon(HyperFindResult result, String name, BufferedImage image,
+            ResultIconSetting displaySelection, ThumbnailLoader thumbnails) {
+        this(result, name, image, displaySelection, thumbnails, 2);
     }
 
-    private BufferedImage copyImage(BufferedImage source, double scale){
-        if(scale == 1)
-            return copyImage(source);
-
-        int w = (int) (source.getWidth()*scale);
-        w = (w>250) ? 250 : w;
-        Image tmp = (Image) source.getScaledInstance(w, -1, Image.SCALE_SMOOTH);
-        BufferedImage b = new BufferedImage(tmp.getWidth(null), tmp.getHeight(null), source.getType());
-        Graphics2D g = (Graphics2D) b.getGraphics();
-        g.drawImage(tmp, 0, 0, null);
-        g.dispose();
-        return b;
+    /**
+     * Creates an icon whose thumbnail is only rendered once it is first painted.
+     *
+     * @param size the size of the thumbnail, see {@link ThumbnailRenderer#getSize(SearchResult)}
+     */
+    public ResultIcon(HyperFindResult result, String name, Dimension size,
+            ResultIconSetting displaySelection, ThumbnailLoader thumbnails) {
+        this(result, name, size, null, displaySelection, thumbnails, 2);
     }
 
-    private BufferedImage copyImage(BufferedImage source){
-        BufferedImage b = new BufferedImage(source.getWidth(), source.getHeight(), source.getType());
-        Graphics2D g = (Graphics2D) b.getGraphics();
-        g.drawImage(source, 0, 0, null);
-        g.dispose();
-        return b;
+    private ResultIcon(HyperFindResult result, String name, Dimension size, BufferedImage image,
+            ResultIconSetting displaySelection, ThumbnailLoader thumbnails, int resultType) {
+        this.result = result;
+        this.name = name;
+        this.displaySelection = displaySelection;
+        this.thumbnails = thumbnails;
+        this.width = size.width;
+        this.height = size.height;
+        this.type = ResultType.getType(resultType);
+        if (image != null) {
+            thumbnails.put(this, image);
+        }
     }
 
+    /**
+     * Labels the result. The matching badge is drawn over the thumbnail whenever it is painted, so this neither
+     * copies nor touches the thumbnail itself.
+     */
     public void drawOverlay(ResultType r) {
-        switch(r)
-        {
+        switch (r) {
             case Positive:
-                type = ResultType.Positive;
-                drawOverlay(checkMarkImage);
-                break;
             case Negative:
-                type = ResultType.Negative;
-                drawOverlay(crossMarkImage);
-                break;
             case Query:
-                drawOverlay(questionMarkImage);
+                type = r;
                 break;
             default:
                 type = ResultType.Ignore;
-                getOriginal();
         }
     }
 
-    private void drawOverlay(BufferedImage overlay) {
-        BufferedImage input = (BufferedImage) copyImage(this.originalImage);
-        Graphics2D g = (Graphics2D) input.getGraphics();
-        g.drawImage(input, 0, 0, null);
-        g.drawImage(overlay, 0, 0, null);
-        g.dispose();
-        icon = new ImageIcon(input);
-    }
-
-    public BufferedImage setOriginal() {
-        //double scale = (score == 2) ? 1: 1.5;
-        double scale = 1;
-        return copyImage((BufferedImage)icon.getImage(), scale);
+    private static BufferedImage getBadge(ResultType type) {
+        switch (type) {
+            case Positive:
+                return checkMarkImage;
+            case Negative:
+                return crossMarkImage;
+            case Query:
+                return questionMarkImage;
+            default:
+                return null;
+        }
     }
 
-    public void getOriginal() {
-        BufferedImage input = (BufferedImage) copyImage(this.originalImage);
-        icon = new ImageIcon(input);
+    /**
+     * Drops the attributes the result list has no use for, keeping what is needed to re-render the thumbnail.
+     * Anything else (e.g. the full object for a popup) is fetched again from the server.
+     */
+    void compact() {
+        SearchResult r = result.getResult();
+        SearchResult compacted = r.withoutAttributes(BULKY_ATTRIBUTES);
+        if (compacted != r) {
+            result = result.withResult(compacted);
+        }
     }
 
     public String getName() {
@@ -212,7 +222,7 @@ class ResultIcon {
     }
 
     public Icon getIcon() {
-        return icon;
+        return thumbnail;
     }
 
     public ResultType getType() {
@@ -222,4 +232,36 @@ class ResultIcon {
     public ResultIconSetting getDisplaySelection() {
         return displaySelection;
     }
+
+    // Paints the cached thumbnail, so that an icon sized for layout doesn't pin the decoded image, topped with the
+    // badge of the current label. Until the thumbnail has been rendered in the background a placeholder is painted
+    // instead.
+    private class ThumbnailIcon implements Icon {
+
+        @Override
+        public void paintIcon(Component c, Graphics g, int x, int y) {
+            BufferedImage image = thumbnails.getOrRequest(ResultIcon.this);
+            if (image != null) {
+                g.drawImage(image, x, y, null);
+            } else {
+                g.setColor(PLACEHOLDER_COLOR);
+                g.fillRect(x, y, width, height);
+            }
+
+            BufferedImage badge = getBadge(type);
+            if (badge != null) {
+                g.drawImage(badge, x, y, null);
+            }
+        }
+
+        @Override
+        public int getIconWidth() {
+            return width;
+        }
+
+        @Override
+        public int getIconHeight() {
+            return height;
+        }
+    }
 }
@@ -0,0 +1,99 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import javax.swing.AbstractListModel;
+
+/**
+ * List model for the search results shown in the ThumbnailBox. Every hit stays in the list as a lightweight
+ * {@link ResultIcon}, while the decoded thumbnails live in a shared, byte-bounded {@link ThumbnailCache} and are
+ * rendered by the {@link ThumbnailLoader} when an entry that is missing from the cache scrolls into view.
+ *
+ * <p>Must only be used on the event dispatch thread.
+ */
+final class ResultListModel extends AbstractListModel<ResultIcon> {
+
+    private final List<ResultIcon> results = new ArrayList<>();
+
+    private final ThumbnailLoader thumbnails;
+
+    ResultListModel(ThumbnailLoader thumbnails) {
+        this.thumbnails = thumbnails;
+    }
+
+    @Override
+    public int getSize() {
+        return results.size();
+    }
+
+    @Override
+    public ResultIcon getElementAt(int index) {
+        return results.get(index);
+    }
+
+    public void addElement(ResultIcon icon) {
+        results.add(icon);
+        fireIntervalAdded(this, results.size() - 1, results.size() - 1);
+    }
+
+    public void addAll(Collection<ResultIcon> icons) {
+        if (icons.isEmpty()) {
+            return;
+        }
+
+        int first = results.size();
+        results.addAll(icons);
+        fireIntervalAdded(this, first, results.size() - 1);
+    }
+
+    public void removeAllElements() {
+        int size = results.size();
+        results.clear();
+        thumbnails.clear();
+
+        if (size > 0) {
+            fireIntervalRemoved(this, 0, size - 1);
+        }
+    }
+}
@@ -76,13 +76,19 @@ public class ResultRegions {
             }
 
             // heatmap
-            Optional<byte[]> heatmap = r.getBytes(getHeatmapAttributeName(name));
+            String heatmapAttr = getHeatmapAttributeName(name);
+            Optional<byte[]> heatmap = r.getBytes(heatmapAttr);
             if (heatmap.isPresent()) {
-                ByteArrayInputStream in = new ByteArrayInputStream(heatmap.get());
-                try {
-                    heatmaps.put(name, ImageIO.read(in));
-                } catch (IOException e) {
-                    e.printStackTrace();
+                BufferedImage image = DecodedImageCache.shared().get(heatmapAttr, heatmap.get(), () -> {
+                    try {
+                        return ImageIO.read(new ByteArrayInputStream(heatmap.get()));
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                        return null;
+                    }
+                });
+                if (image != null) {
+                    heatmaps.put(name, image);
                 }
             }
         }
@@ -0,0 +1,211 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+
+/**
+ * Paces the thread that pulls results from a running search. The thread takes one permit per result and is parked
+ * (without spinning) while the search is paused or once the permits granted for the current page of results have
+ * been used up.
+ *
+ * <p>State changes are reported to registered {@link ChangeListener}s on the thread that caused them, so listeners
+ * that touch Swing components must hop onto the event dispatch thread themselves.
+ */
+final class ResultThrottle {
+
+    enum State {
+        /** Results are being fetched. */
+        RUNNING,
+        /** Fetching is suspended, either explicitly or because the current page is full. */
+        PAUSED,
+        /** The search is over; waiting threads are released and no more permits are handed out. */
+        STOPPED
+    }
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+
+    private State state = State.RUNNING;
+    private int permits;
+
+    ResultThrottle(int permits) {
+        this.permits = permits;
+    }
+
+    /**
+     * Takes one permit, blocking while the throttle is paused or out of permits. Running out of permits moves the
+     * throttle into {@link State#PAUSED} until {@link #grant(int)} is called.
+     *
+     * @return false if the throttle was stopped before a permit became available
+     */
+    boolean acquire() throws InterruptedException {
+        boolean paused = false;
+
+        lock.lock();
+        try {
+            if (state == State.RUNNING && permits == 0) {
+                state = State.PAUSED;
+                paused = true;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        if (paused) {
+            fireChangeEvent();
+        }
+
+        lock.lock();
+        try {
+            while (state == State.PAUSED || (state == State.RUNNING && permits == 0)) {
+                changed.await();
+            }
+
+            if (state == State.STOPPED) {
+                return false;
+            }
+
+            permits--;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts a new page of {@code count} results and resumes fetching.
+     */
+    void grant(int count) {
+        boolean resumed;
+
+        lock.lock();
+        try {
+            if (state == State.STOPPED) {
+                return;
+            }
+            permits = count;
+            resumed = state != State.RUNNING;
+            state = State.RUNNING;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        if (resumed) {
+            fireChangeEvent();
+        }
+    }
+
+    void pause() {
+        setState(State.PAUSED);
+    }
+
+    void resume() {
+        setState(State.RUNNING);
+    }
+
+    void stop() {
+        setState(State.STOPPED);
+    }
+
+    State getState() {
+        lock.lock();
+        try {
+            return state;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    boolean isRunning() {
+        return getState() == State.RUNNING;
+    }
+
+    /**
+     * @return true if the permits for the current page have all been taken
+     */
+    boolean isExhausted() {
+        lock.lock();
+        try {
+            return permits == 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void addChangeListener(ChangeListener l) {
+        listeners.add(l);
+    }
+
+    void removeChangeListener(ChangeListener l) {
+        listeners.remove(l);
+    }
+
+    private void setState(State newState) {
+        lock.lock();
+        try {
+            if (state == newState || state == State.STOPPED) {
+                return;
+            }
+            state = newState;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        fireChangeEvent();
+    }
+
+    private void fireChangeEvent() {
+        ChangeEvent ev = new ChangeEvent(this);
+        for (ChangeListener l : listeners) {
+            l.stateChanged(ev);
+        }
+    }
+}
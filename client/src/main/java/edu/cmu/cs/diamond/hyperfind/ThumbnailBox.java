@@ -40,26 +40,18 @@
 
 package edu.cmu.cs.diamond.hyperfind;
 
-import com.google.common.collect.ImmutableMap;
 import edu.cmu.cs.diamond.hyperfind.ResultIcon.ResultIconSetting;
 import edu.cmu.cs.diamond.hyperfind.ResultIcon.ResultType;
 import edu.cmu.cs.diamond.hyperfind.StatisticsArea.DisplayStats;
 import edu.cmu.cs.diamond.hyperfind.connection.api.FeedbackObject;
 import edu.cmu.cs.diamond.hyperfind.connection.api.ModelStats;
-import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
 import edu.cmu.cs.diamond.hyperfind.connection.api.Search;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchListener;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchStats;
 import java.awt.Adjustable;
-import java.awt.BasicStroke;
 import java.awt.BorderLayout;
-import java.awt.Color;
 import java.awt.Dimension;
-import java.awt.Graphics2D;
-import java.awt.Rectangle;
-import java.awt.RenderingHints;
-import java.awt.Stroke;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.AdjustmentEvent;
@@ -70,32 +62,24 @@ import java.awt.event.KeyListener;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
-import javax.imageio.ImageIO;
 import javax.swing.Box;
-import javax.swing.DefaultListModel;
-import javax.swing.ImageIcon;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JList;
+import javax.swing.ListModel;
 import javax.swing.JMenuItem;
 import javax.swing.JPanel;
 import javax.swing.JPopupMenu;
@@ -109,7 +93,6 @@ import javax.swing.Timer;
 import javax.swing.event.ListSelectionEvent;
 import javax.swing.event.ListSelectionListener;
 import javax.swing.border.EmptyBorder;
-import one.util.streamex.EntryStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -123,9 +106,9 @@ public class ThumbnailBox extends JPanel {
 
     private static final long NANOSEC_PER_MILLI = (long) 1e6;
     private static final int PREFERRED_WIDTH = 750;
-    private static final ResultIcon PAUSE_RESULT = new ResultIcon(null, null, null, null);
-    private static final HeatmapOverlayConvertOp HEATMAP_OVERLAY_OP =
-            new HeatmapOverlayConvertOp(new Color(0x8000ff00, true));
+    // how often the fetch thread checks whether the search was stopped while no results are coming in
+    private static final Duration RESULT_POLL_INTERVAL = Duration.ofMillis(500);
+    private static final ResultIcon PAUSE_RESULT = new ResultIcon(null, null, (BufferedImage) null, null, null);
 
     public final JList<ResultIcon> resultList;
 
@@ -135,19 +118,25 @@ public class ThumbnailBox extends JPanel {
     private final JButton moreResultsButton;
     private final JLabel timeLabel;
     private final JPopupMenu popupMenu;
-    private final ConcurrentMap<ObjectId, ResultType> labelsToSend = new ConcurrentHashMap<>();
     private final Map<String, FeedbackObject> feedbackItems = new HashMap<>();
     private final AtomicReference<ModelStats> modelStats = new AtomicReference<>();
-    private final AtomicInteger runningJobs = new AtomicInteger(0);
+    private final ThumbnailLoader thumbnailLoader;
+    private final DetailCache detailCache =
+            new DetailCache(ClientSettings.detailCacheSize(), ClientSettings.detailCacheBytes());
+    private final DetailPrefetcher detailPrefetcher =
+            new DetailPrefetcher(detailCache, ClientSettings.prefetchThreads());
+    // waits for selection and scrolling to settle before prefetching
+    private final Timer prefetchTimer = new Timer(200, e -> prefetchDetails());
     private final int resultsPerScreen;
 
     private final JScrollPane resultPane;
 
-    private volatile boolean pauseState = false;
+    private volatile ResultThrottle throttle;
 
     private Search search;
-    private ScheduledExecutorService timerExecutor;
-    private ExecutorService labelExecutor;
+    // read by the throttle listener on the fetching thread
+    private volatile ScheduledExecutorService timerExecutor;
+    private LabelDispatcher labelDispatcher;
     private ScheduledFuture<?> statsTimerFuture;
 
     private long startTime;
@@ -158,6 +147,7 @@ public class ThumbnailBox extends JPanel {
 
     private Timer timer;
     private SwingWorker<?, ?> workerFuture;
+    private volatile RenderPipeline<?, ?> renderPipeline;
     private SwingWorker<?, ?> retrainWorker;
     private List<HyperFindSearchMonitor> searchMonitors;
 
@@ -177,6 +167,10 @@ public class ThumbnailBox extends JPanel {
         this.statsArea = statsArea;
         this.resultsPerScreen = resultsPerScreen;
         this.popupMenu = new JPopupMenu();
+        this.thumbnailLoader = new ThumbnailLoader(
+                new ThumbnailCache(ClientSettings.thumbnailCacheBytes()),
+                ClientSettings.renderThreads(),
+                this::repaintResults);
 
         this.resultList = createResultList();
 
@@ -197,6 +191,7 @@ public class ThumbnailBox extends JPanel {
         Box b = Box.createHorizontalBox();
 
         this.resultPane = new JScrollPane(resultList);
+        prefetchTimer.setRepeats(false);
         resultPane.setHorizontalScrollBarPolicy(ScrollPaneConstants.HORIZONTAL_SCROLLBAR_NEVER);
         resultPane.setVerticalScrollBarPolicy(ScrollPaneConstants.VERTICAL_SCROLLBAR_ALWAYS);
         b.add(resultPane);
@@ -219,6 +214,33 @@ public class ThumbnailBox extends JPanel {
         setPopUpMenu();
     }
 
+    /**
+     * The full objects of results fetched for popups, shared with the prefetcher that fills it ahead of time.
+     */
+    DetailCache getDetailCache() {
+        return detailCache;
+    }
+
+    // prefetch the objects of the results after the last selected one
+    private void prefetchDetails() {
+        int count = ClientSettings.prefetchCount();
+        int lead = resultList.getLeadSelectionIndex();
+        ListModel<ResultIcon> model = resultList.getModel();
+        if (count == 0 || lead < 0 || resultList.isSelectionEmpty() || lead >= model.getSize()) {
+            detailPrefetcher.cancel();
+            return;
+        }
+
+        List<HyperFindResult> next = new ArrayList<>();
+        for (int i = lead + 1; i < model.getSize() && next.size() < count; i++) {
+            HyperFindResult r = model.getElementAt(i).getResult();
+            if (r != null) {
+                next.add(r);
+            }
+        }
+        detailPrefetcher.prefetch(next);
+    }
+
     //Scroll the resultPane to bottom if no item selected
     private void scrollPaneToBottom() {
         JScrollBar verticalBar = resultPane.getVerticalScrollBar();
@@ -252,6 +274,7 @@ public class ThumbnailBox extends JPanel {
                 for (HyperFindSearchMonitor sm : searchMonitors) {
                     sm.selectionChanged(results);
                 }
+                prefetchTimer.restart();
             }
         };
 
@@ -283,7 +306,7 @@ public class ThumbnailBox extends JPanel {
         };
 
         JList<ResultIcon> list = new JList<>();
-        list.setModel(new DefaultListModel<>());
+        list.setModel(new ResultListModel(thumbnailLoader));
         list.setSelectionMode(ListSelectionModel.MULTIPLE_INTERVAL_SELECTION);
         list.setDragEnabled(true);
         list.setCellRenderer(new SearchPanelCellRenderer());
@@ -327,29 +350,8 @@ public class ThumbnailBox extends JPanel {
                                 FeedbackObject.of(r.getId(), cmd.getValue(), fv.orElse(new byte[0])));
                     }
 
-                    labelsToSend.put(r.getId(), cmd);
-                }
-
-                if (runningJobs.getAndUpdate(i -> Math.min(2, i + 1)) < 2) {
-                    try {
-                        labelExecutor.execute(() -> {
-                            try {
-                                Map<ObjectId, ResultType> toSend = ImmutableMap.copyOf(labelsToSend);
-                                Map<ObjectId, Integer> examples = EntryStream.of(toSend)
-                                        .mapValues(r -> r.equals(ResultType.Ignore) ? -1 : r.getValue())
-                                        .toMap();
-
-                                search.labelExamples(examples);
-                                toSend.forEach(labelsToSend::remove);
-                            } catch (Exception ex) {
-                                ex.printStackTrace();
-                            } finally {
-                                runningJobs.decrementAndGet();
-                            }
-                        });
-                    } catch (RejectedExecutionException _ignore) {
-                        // Search has stopped
-                        runningJobs.decrementAndGet();
+                    if (labelDispatcher != null) {
+                        labelDispatcher.submit(r.getId(), cmd == ResultType.Ignore ? -1 : cmd.getValue());
                     }
                 }
 
@@ -389,6 +391,18 @@ public class ThumbnailBox extends JPanel {
                 labelDisplay += " ".repeat(10) + "Positive: " + positiveCount;
                 labelDisplay += " ".repeat(3) + "Negative: " + negativeCount;
 
+                LabelDispatcher dispatcher = labelDispatcher;
+                if (dispatcher != null) {
+                    int unsent = dispatcher.getPendingCount();
+                    long failed = dispatcher.getFailedCount();
+                    if (unsent > 0) {
+                        labelDisplay += " ".repeat(3) + "Sending: " + unsent;
+                    }
+                    if (failed > 0) {
+                        labelDisplay += " ".repeat(3) + "Failed: " + failed;
+                    }
+                }
+
                 timeLabel.setText(labelDisplay);
 
                 // scrollPaneToBottom();
@@ -412,7 +426,9 @@ public class ThumbnailBox extends JPanel {
         if (retrainWorker != null) {
             retrainWorker.cancel(true);
         }
-        pauseState = true;
+        if (throttle != null) {
+            throttle.stop();
+        }
         sampledTPCount = 0;
         modelStats.set(null);
         searchListener.searchStopped();
@@ -441,21 +457,22 @@ public class ThumbnailBox extends JPanel {
             protected Object doInBackground() {
                 // non-AWT thread
                 try {
-                    pauseState = true;
+                    throttle.pause();
                     sampledTPCount = 0;
-                    moreResultsButton.doClick();
-                    pauseState = true;
-                    DefaultListModel<ResultIcon> model = (DefaultListModel<ResultIcon>) resultList.getModel();
-                    model.removeAllElements();
-                    moreResultsButton.setVisible(false);
-                    stats.setIndeterminateMessage("Retraining in Progress...");
-                    statsArea.setDone();
-                    revalidate();
-                    repaint();
+                    // queued ahead of the results fetched after retraining, so those are not cleared
+                    SwingUtilities.invokeLater(() -> {
+                        ResultListModel model = (ResultListModel) resultList.getModel();
+                        model.removeAllElements();
+                        moreResultsButton.setVisible(false);
+                        stats.setIndeterminateMessage("Retraining in Progress...");
+                        statsArea.setDone();
+                        revalidate();
+                        repaint();
+                    });
                     search.retrainFilter(feedbackItems.values());
                     log.info("Retrain finish !");
                     clearFeedBackItems();
-                    pauseState = false;
+                    throttle.grant(resultsPerScreen);
                 } catch (RuntimeException e) {
                     SwingUtilities.invokeLater(() -> stats.showException(e.getCause()));
                     e.printStackTrace();
@@ -474,20 +491,37 @@ public class ThumbnailBox extends JPanel {
         searchMonitors = monitors;
         searchListener.searchStarted(s, this::retrainSearch);
 
-        pauseState = false;
+        // fetching blocks on the throttle once a page of results is shown
+        ResultThrottle resultThrottle = new ResultThrottle(resultsPerScreen);
+        resultThrottle.addChangeListener(e -> {
+            if (resultThrottle.getState() == ResultThrottle.State.PAUSED) {
+                // the stats timer skips updates while paused, so refresh them one last time; listeners run on the
+                // fetching thread, which must not wait on the server for stats
+                ScheduledExecutorService executor = timerExecutor;
+                if (executor != null) {
+                    try {
+                        executor.execute(this::refreshStats);
+                    } catch (RejectedExecutionException ex) {
+                        // the search has been stopped
+                    }
+                }
+            }
+        });
+        throttle = resultThrottle;
         sampledTPCount = 0;
         modelStats.set(null);
 
         startTime = System.nanoTime();
         timer.start();
         startStatsTimer();
-        labelExecutor = Executors.newSingleThreadExecutor();
+        labelDispatcher = new LabelDispatcher(
+                s::labelExamples, ClientSettings.labelBatchSize(), ClientSettings.labelFlushDelay());
 
-        resultList.setModel(new DefaultListModel<>());
-
-        // the tricky pausing, try to make it better with local variables
-        final AtomicInteger resultsLeftBeforePause = new AtomicInteger(resultsPerScreen);
-        final Semaphore pauseSemaphore = new Semaphore(0);
+        thumbnailLoader.clear();
+        detailPrefetcher.cancel();
+        // images decoded for the last search are rarely shown again, so make room for the new one
+        DecodedImageCache.shared().clear();
+        resultList.setModel(new ResultListModel(thumbnailLoader));
 
         for (ActionListener a : moreResultsButton.getActionListeners()) {
             moreResultsButton.removeActionListener(a);
@@ -497,9 +531,7 @@ public class ThumbnailBox extends JPanel {
             @Override
             public void actionPerformed(ActionEvent e) {
                 moreResultsButton.setVisible(false);
-                resultsLeftBeforePause.set(resultsPerScreen);
-                pauseState = false;
-                pauseSemaphore.release();
+                resultThrottle.grant(resultsPerScreen);
                 revalidate();
                 repaint();
             }
@@ -509,108 +541,55 @@ public class ThumbnailBox extends JPanel {
             @Override
             protected Object doInBackground() throws InterruptedException {
                 // non-AWT thread
+                RenderPipeline<SearchResult, ResultIcon> pipeline = new RenderPipeline<>(
+                        "result-render",
+                        ClientSettings.renderThreads(),
+                        ClientSettings.renderQueueSize(),
+                        ClientSettings.orderedResults(),
+                        result -> createResultIcon(activePredicateSet, result),
+                        this::publishResult);
+                renderPipeline = pipeline;
+
                 try {
+                    fetch:
                     while (true) {
-                        if (pauseState) {
-                            continue;
-                        }
-
-                        Optional<SearchResult> resultOpt = search.getNextResult();
+                        Optional<List<SearchResult>> batch =
+                                search.getNextResults(ClientSettings.renderQueueSize(), RESULT_POLL_INTERVAL);
 
-                        if (resultOpt.isEmpty()) {
+                        if (batch.isEmpty()) {
                             log.info("RESULT NULL");
                             break;
                         }
 
-                        SearchResult result = resultOpt.get();
-
-                        if (resultsLeftBeforePause.getAndDecrement() == 0) {
-                            publish(PAUSE_RESULT);
-
-                            pauseSemaphore.acquire();
-                            continue;
-                        }
-
-                        HyperFindResult hr = new HyperFindResult(activePredicateSet, result);
-
-                        for (HyperFindSearchMonitor m : searchMonitors) {
-                            m.notify(hr);
+                        if (batch.get().isEmpty() && resultThrottle.getState() == ResultThrottle.State.STOPPED) {
+                            break;
                         }
 
-                        Optional<byte[]> thumbData = result.getBytes("thumbnail.jpeg");
-                        BufferedImage thumb = null;
-                        if (thumbData.isPresent()) {
-                            ByteArrayInputStream in = new ByteArrayInputStream(thumbData.get());
-
-                            try {
-                                thumb = ImageIO.read(in);
-                            } catch (IOException e) {
-                                e.printStackTrace();
+                        for (SearchResult result : batch.get()) {
+                            if (resultThrottle.isExhausted()) {
+                                // everything fetched so far goes on screen before the "next page" button
+                                pipeline.flush();
+                                publish(PAUSE_RESULT);
                             }
-                        }
-
-                        if (thumb == null) {
-                            // cook up blank image
-                            thumb = new BufferedImage(200, 150, BufferedImage.TYPE_INT_RGB);
-                        }
-
-                        // draw heatmaps and patches
-                        ResultRegions regions = hr.getRegions();
-                        Graphics2D g = thumb.createGraphics();
-                        g.setRenderingHint(
-                                RenderingHints.KEY_INTERPOLATION,
-                                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
-                        int origW = result.getInt("_cols.int").getAsInt();
-                        int origH = result.getInt("_rows.int").getAsInt();
-
-                        g.scale(
-                                (double) thumb.getWidth() / (double) origW,
-                                (double) thumb.getHeight() / (double) origH);
-
-                        for (BufferedImage heatmap : regions.getHeatmaps()) {
-                            drawHeatmap(g, heatmap);
-                        }
-
-                        g.setColor(Color.GREEN);
 
-                        for (BoundingBox box : regions.getPatches()) {
-                            drawPatch(g, box);
-                        }
-
-                        if (result.getBytes("_gt_label").isPresent()) {
-                            drawBorder(g, Color.RED, origW, origH, 80);
-                            sampledTPCount += 1;
-                        } else if (result.getBorderColor().isPresent()) {
-                            drawBorder(
-                                    g,
-                                    result.getBorderColor().get(),
-                                    origW,
-                                    origH,
-                                    80);
-                        }
+                            // parks this thread until the next page is requested
+                            if (!resultThrottle.acquire()) {
+                                break fetch;
+                            }
 
-                        g.dispose();
-
-                        // check setting from server
-                        ResultIconSetting d = ResultIconSetting.ICON_ONLY;
-                        Optional<String> settingOpt = result.getString("hyperfind.thumbnail-display");
-                        if (settingOpt.isPresent()) {
-                            String setting = settingOpt.get();
-                            if (setting.equals("icon")) {
-                                d = ResultIconSetting.ICON_ONLY;
-                            } else if (setting.equals("label")) {
-                                d = ResultIconSetting.LABEL_ONLY;
-                            } else if (setting.equals("icon-and-label")) {
-                                d = ResultIconSetting.ICON_AND_LABEL;
+                            if (ThumbnailRenderer.isSampledTruePositive(result)) {
+                                sampledTPCount += 1;
                             }
-                        }
 
-                        ResultIcon resultIcon = new ResultIcon(hr, result.getName(), new ImageIcon(thumb), d);
-                        publish(resultIcon);
+                            pipeline.submit(result);
+                        }
                     }
+
+                    pipeline.finish();
                 } catch (RuntimeException e) {
                     log.error("Ran into exception getting results", e);
                 } finally {
+                    pipeline.cancel();
                     timer.stop();
                     // update stats one more time, if possible
                     updateStats();
@@ -630,9 +609,8 @@ public class ThumbnailBox extends JPanel {
                                 timerExecutor.shutdownNow();
                             }
 
-                            if (labelExecutor != null) {
-                                labelExecutor.shutdownNow();
-                                labelsToSend.clear();
+                            if (labelDispatcher != null) {
+                                labelDispatcher.close();
                             }
 
                             if (statsTimerFuture != null) {
@@ -648,51 +626,62 @@ public class ThumbnailBox extends JPanel {
                 return null;
             }
 
+            // result publisher thread
+            private void publishResult(ResultIcon resultIcon) {
+                try {
+                    for (HyperFindSearchMonitor m : searchMonitors) {
+                        m.notify(resultIcon.getResult());
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+
+                resultIcon.compact();
+                publish(resultIcon);
+            }
+
             @Override
             protected void process(List<ResultIcon> chunks) {
                 // AWT thread
+                ResultListModel model = (ResultListModel) resultList.getModel();
+                List<ResultIcon> newResults = new ArrayList<>(chunks.size());
 
                 for (ResultIcon resultIcon : chunks) {
-                    if (pauseState) {
-                        break;
-                    }
                     if (resultIcon == PAUSE_RESULT) {
-                        updateStats();
-                        pauseState = true;
+                        model.addAll(newResults);
+                        newResults.clear();
                         moreResultsButton.setVisible(true);
                         revalidate();
                         repaint();  // Repaint this Thumbnail box
                     } else {
                         /* Add newly fetched search result to result list */
-                        DefaultListModel<ResultIcon> model = (DefaultListModel<ResultIcon>) resultList.getModel();
-                        model.addElement(resultIcon);
+                        newResults.add(resultIcon);
                     }
                 }
+
+                model.addAll(newResults);
             }
         };
         workerFuture.execute();
     }
 
-    private void drawHeatmap(Graphics2D g, BufferedImage heatmap) {
-        g.drawImage(heatmap, HEATMAP_OVERLAY_OP, 0, 0);
-    }
+    // result render thread
+    private ResultIcon createResultIcon(ActivePredicateSet activePredicateSet, SearchResult result) {
+        HyperFindResult hr = new HyperFindResult(activePredicateSet, result);
+        ResultIconSetting displaySetting = ThumbnailRenderer.getDisplaySetting(result);
+        if (ClientSettings.lazyThumbnails()) {
+            // rendered by the thumbnail loader once the result is scrolled into view
+            return new ResultIcon(hr, result.getName(), ThumbnailRenderer.getSize(result), displaySetting,
+                    thumbnailLoader);
+        }
 
-    private void drawPatch(Graphics2D g, BoundingBox box) {
-        int x0 = box.getX0();
-        int y0 = box.getY0();
-        int x1 = box.getX1();
-        int y1 = box.getY1();
-        Rectangle r = new Rectangle(x0, y0, x1 - x0, y1 - y0);
-        g.draw(r);
+        BufferedImage thumb = ThumbnailRenderer.render(hr);
+        return new ResultIcon(hr, result.getName(), thumb, displaySetting, thumbnailLoader);
     }
 
-    private void drawBorder(Graphics2D g, Color c, int width, int height, int thickness) {
-        Stroke currentStroke = g.getStroke();
-        g.setColor(c);
-        g.setStroke(new BasicStroke(thickness));
-        Rectangle r = new Rectangle(0, 0, width, height);
-        g.draw(r);
-        g.setStroke(currentStroke);
+    // called on the event dispatch thread when background thumbnails become available
+    private void repaintResults() {
+        resultList.repaint();
     }
 
     public Map<String, List<String>>  getStats() {
@@ -701,12 +690,22 @@ public class ThumbnailBox extends JPanel {
     }
 
     public void updateStats() {
-        try {
+        ResultThrottle t = throttle;
+        if (t == null || !t.isRunning()) {
+            return;
+        }
 
-            if (pauseState) {
-                return;
-            }
+        refreshStats();
+    }
+
+    private void refreshStats() {
+        RenderPipeline<?, ?> pipeline = renderPipeline;
+        if (pipeline != null) {
+            log.debug("Result pipeline: {}", pipeline);
+        }
+        log.debug("Decoded images: {}", DecodedImageCache.shared());
 
+        try {
             SearchStats searchStats = search.getStats();
             boolean hasStats = searchStats.totalObjects() > 0;
 
@@ -0,0 +1,106 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least-recently-used cache of rendered result thumbnails, bounded by the number of bytes of decoded pixel data it
+ * holds. Entries that fall out of the cache are rendered again from the result's compressed attributes the next
+ * time they are painted, so only the thumbnails around what the user is looking at stay decoded.
+ */
+final class ThumbnailCache {
+
+    private final long maxBytes;
+
+    // access-ordered, least recently used first
+    private final Map<Object, BufferedImage> images = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long bytes = 0;
+
+    ThumbnailCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    synchronized BufferedImage get(Object key) {
+        return images.get(key);
+    }
+
+    synchronized void put(Object key, BufferedImage image) {
+        BufferedImage old = images.put(key, image);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += sizeOf(image);
+
+        // always keep the newest entry, even if it is larger than the budget on its own
+        Iterator<BufferedImage> it = images.values().iterator();
+        while (bytes > maxBytes && images.size() > 1) {
+            bytes -= sizeOf(it.next());
+            it.remove();
+        }
+    }
+
+    synchronized void remove(Object key) {
+        BufferedImage old = images.remove(key);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+    }
+
+    synchronized void clear() {
+        images.clear();
+        bytes = 0;
+    }
+
+    synchronized long getSizeInBytes() {
+        return bytes;
+    }
+
+    static long sizeOf(BufferedImage image) {
+        DataBuffer buffer = image.getRaster().getDataBuffer();
+        return (long) buffer.getSize() * buffer.getNumBanks() * DataBuffer.getDataTypeSize(buffer.getDataType()) / 8;
+    }
+}
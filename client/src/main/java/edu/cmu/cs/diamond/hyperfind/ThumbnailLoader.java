@@ -0,0 +1,145 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.awt.image.BufferedImage;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Supplies rendered thumbnails to {@link ResultIcon}s from a {@link ThumbnailCache}. Thumbnails missing from the
+ * cache are rendered on a background pool when first painted, and the result list is repainted once they are ready.
+ * The most recent requests are served first, so while scrolling the cells currently in view win over those that
+ * have already scrolled past. A thumbnail that fails to render is not tried again until the loader is cleared.
+ */
+final class ThumbnailLoader {
+
+    private static final Logger log = LoggerFactory.getLogger(ThumbnailLoader.class);
+
+    private final ThumbnailCache cache;
+    private final Runnable onLoaded;
+    private final ThreadPoolExecutor executor;
+    private final Set<ResultIcon> pending = ConcurrentHashMap.newKeySet();
+    // weak, so icons dropped from the list are not kept around for their failure
+    private final Set<ResultIcon> failed = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+    private final AtomicBoolean repaintQueued = new AtomicBoolean();
+
+    /**
+     * @param onLoaded called on the event dispatch thread after thumbnails have been loaded
+     */
+    ThumbnailLoader(ThumbnailCache cache, int threads, Runnable onLoaded) {
+        this.cache = cache;
+        this.onLoaded = onLoaded;
+        this.executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                new LinkedBlockingDeque<>() {
+                    @Override
+                    public boolean offer(Runnable r) {
+                        return offerFirst(r);
+                    }
+                },
+                new ThreadFactoryBuilder().setNameFormat("thumbnail-loader-%d").setDaemon(true).build());
+        this.executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Returns the cached thumbnail, or null after scheduling it to be rendered in the background. Returns null
+     * without rendering again if the thumbnail could not be rendered before.
+     */
+    BufferedImage getOrRequest(ResultIcon icon) {
+        BufferedImage image = cache.get(icon);
+        if (image == null && !failed.contains(icon) && pending.add(icon)) {
+            try {
+                executor.execute(() -> load(icon));
+            } catch (RejectedExecutionException e) {
+                pending.remove(icon);
+            }
+        }
+        return image;
+    }
+
+    void put(ResultIcon icon, BufferedImage image) {
+        cache.put(icon, image);
+    }
+
+    /**
+     * Forgets all thumbnails, including the ones waiting to be rendered.
+     */
+    void clear() {
+        executor.getQueue().clear();
+        pending.clear();
+        failed.clear();
+        cache.clear();
+    }
+
+    private void load(ResultIcon icon) {
+        boolean loaded = false;
+        try {
+            if (pending.contains(icon) && cache.get(icon) == null) {
+                cache.put(icon, ThumbnailRenderer.render(icon.getResult()));
+                loaded = true;
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to render thumbnail for {}", icon.getName(), e);
+            failed.add(icon);
+        } finally {
+            pending.remove(icon);
+        }
+
+        // a repaint would only ask for the same thumbnail again
+        if (loaded && repaintQueued.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(() -> {
+                repaintQueued.set(false);
+                onLoaded.run();
+            });
+        }
+    }
+}
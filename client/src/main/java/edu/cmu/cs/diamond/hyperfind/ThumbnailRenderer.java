@@ -0,0 +1,217 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind;
+
+import edu.cmu.cs.diamond.hyperfind.ResultIcon.ResultIconSetting;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Stroke;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Optional;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+/**
+ * Draws the thumbnails shown in the result list: the result's "thumbnail.jpeg" attribute with the heatmaps and
+ * patches of the active filters and the ground truth / server supplied border painted on top.
+ *
+ * <p>Safe to call from any thread.
+ */
+final class ThumbnailRenderer {
+
+    static final String THUMBNAIL_ATTR = "thumbnail.jpeg";
+
+    private static final int BLANK_WIDTH = 200;
+    private static final int BLANK_HEIGHT = 150;
+
+    private static final HeatmapOverlayConvertOp HEATMAP_OVERLAY_OP =
+            new HeatmapOverlayConvertOp(new Color(0x8000ff00, true));
+
+    private ThumbnailRenderer() {
+    }
+
+    static BufferedImage render(HyperFindResult hr) {
+        SearchResult result = hr.getResult();
+
+        BufferedImage decoded = decodeThumbnail(result);
+        BufferedImage thumb;
+        if (decoded != null) {
+            // the decoded thumbnail is shared, draw on a copy
+            thumb = new BufferedImage(decoded.getWidth(), decoded.getHeight(), BufferedImage.TYPE_INT_RGB);
+            Graphics2D copy = thumb.createGraphics();
+            copy.drawImage(decoded, 0, 0, null);
+            copy.dispose();
+        } else {
+            // cook up blank image
+            thumb = new BufferedImage(BLANK_WIDTH, BLANK_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        }
+
+        // draw heatmaps and patches
+        ResultRegions regions = hr.getRegions();
+        Graphics2D g = thumb.createGraphics();
+        g.setRenderingHint(
+                RenderingHints.KEY_INTERPOLATION,
+                RenderingHints.VALUE_INTERPOLATION_BICUBIC);
+        int origW = result.getInt("_cols.int").getAsInt();
+        int origH = result.getInt("_rows.int").getAsInt();
+
+        g.scale(
+                (double) thumb.getWidth() / (double) origW,
+                (double) thumb.getHeight() / (double) origH);
+
+        HEATMAP_OVERLAY_OP.draw(g, regions.getHeatmaps(), 0, 0);
+
+        g.setColor(Color.GREEN);
+
+        for (BoundingBox box : regions.getPatches()) {
+            drawPatch(g, box);
+        }
+
+        if (isSampledTruePositive(result)) {
+            drawBorder(g, Color.RED, origW, origH, 80);
+        } else if (result.getBorderColor().isPresent()) {
+            drawBorder(
+                    g,
+                    result.getBorderColor().get(),
+                    origW,
+                    origH,
+                    80);
+        }
+
+        g.dispose();
+
+        return thumb;
+    }
+
+    /**
+     * Returns the size {@link #render(HyperFindResult)} will produce, reading only the thumbnail's image header.
+     */
+    static Dimension getSize(SearchResult result) {
+        Optional<byte[]> thumbData = result.getBytes(THUMBNAIL_ATTR);
+        if (thumbData.isPresent()) {
+            try (ImageInputStream in = ImageIO.createImageInputStream(new ByteArrayInputStream(thumbData.get()))) {
+                Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+                if (readers.hasNext()) {
+                    ImageReader reader = readers.next();
+                    try {
+                        reader.setInput(in, true, true);
+                        return new Dimension(reader.getWidth(0), reader.getHeight(0));
+                    } finally {
+                        reader.dispose();
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        return new Dimension(BLANK_WIDTH, BLANK_HEIGHT);
+    }
+
+    /**
+     * Returns the result's thumbnail as sent by the server, without regions drawn on it, or null if it has none. The
+     * image is shared and must not be modified.
+     */
+    static BufferedImage decodeThumbnail(SearchResult result) {
+        Optional<byte[]> thumbData = result.getBytes(THUMBNAIL_ATTR);
+        if (thumbData.isPresent()) {
+            return DecodedImageCache.shared().get(THUMBNAIL_ATTR, thumbData.get(), () -> decode(thumbData.get()));
+        }
+        return null;
+    }
+
+    private static BufferedImage decode(byte[] thumbData) {
+        try {
+            return ImageIO.read(new ByteArrayInputStream(thumbData));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    static boolean isSampledTruePositive(SearchResult result) {
+        return result.getBytes("_gt_label").isPresent();
+    }
+
+    // check setting from server
+    static ResultIconSetting getDisplaySetting(SearchResult result) {
+        ResultIconSetting d = ResultIconSetting.ICON_ONLY;
+        Optional<String> settingOpt = result.getString("hyperfind.thumbnail-display");
+        if (settingOpt.isPresent()) {
+            String setting = settingOpt.get();
+            if (setting.equals("icon")) {
+                d = ResultIconSetting.ICON_ONLY;
+            } else if (setting.equals("label")) {
+                d = ResultIconSetting.LABEL_ONLY;
+            } else if (setting.equals("icon-and-label")) {
+                d = ResultIconSetting.ICON_AND_LABEL;
+            }
+        }
+        return d;
+    }
+
+    private static void drawPatch(Graphics2D g, BoundingBox box) {
+        int x0 = box.getX0();
+        int y0 = box.getY0();
+        int x1 = box.getX1();
+        int y1 = box.getY1();
+        Rectangle r = new Rectangle(x0, y0, x1 - x0, y1 - y0);
+        g.draw(r);
+    }
+
+    private static void drawBorder(Graphics2D g, Color c, int width, int height, int thickness) {
+        Stroke currentStroke = g.getStroke();
+        g.setColor(c);
+        g.setStroke(new BasicStroke(thickness));
+        Rectangle r = new Rectangle(0, 0, width, height);
+        g.draw(r);
+        g.setStroke(currentStroke);
+    }
+}
@@ -61,4 +61,7 @@ public interface Connection {
 
     boolean supportsOfflineSearch();
 
+    // whether getBundle(InputStream) can load predicate files
+    boolean supportsPredicateFiles();
+
 }
@@ -45,13 +45,17 @@ import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 import java.util.List;
 import org.immutables.value.Value;
 
+/**
+ * A filter of a search. The code and blob are {@link FilterPayload}s, so filters loaded from the same bundle or
+ * saved search share them rather than each holding a copy.
+ */
 @Value.Immutable
 @JsonSerialize(as = ImmutableFilter.class)
 @JsonDeserialize(as = ImmutableFilter.class)
 public interface Filter {
 
     @Value.Parameter
-    byte[] code();
+    FilterPayload code();
 
     @Value.Parameter
     List<String> dependencies();
@@ -69,7 +73,7 @@ public interface Filter {
     double maxScore();
 
     @Value.Parameter
-    byte[] blob();
+    FilterPayload blob();
 
     static Filter of(
             byte[] code,
@@ -79,6 +83,13 @@ public interface Filter {
             double minScore,
             double maxScore,
             byte[] blob) {
-        return ImmutableFilter.of(code, dependencies, arguments, name, minScore, maxScore, blob);
+        return ImmutableFilter.of(
+                FilterPayload.of(code),
+                dependencies,
+                arguments,
+                name,
+                minScore,
+                maxScore,
+                FilterPayload.of(blob));
     }
 }
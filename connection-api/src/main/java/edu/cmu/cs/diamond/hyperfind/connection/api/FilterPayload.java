@@ -0,0 +1,166 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.api;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The code or blob of a {@link Filter}, addressed by the SHA-256 digest of its content. Payloads are interned, so
+ * every filter built from the same bytes shares one instance (and one array) for as long as any of them is reachable,
+ * and comparing two payloads only compares their digests.
+ *
+ * <p>Serialized as the raw bytes, so saved searches keep their format.
+ */
+public final class FilterPayload {
+
+    private static final Map<ByteBuffer, PayloadReference> INTERNED = new HashMap<>();
+    private static final ReferenceQueue<FilterPayload> COLLECTED = new ReferenceQueue<>();
+
+    private final byte[] bytes;
+    private final byte[] digest;
+    private final int hashCode;
+
+    private FilterPayload(byte[] bytes, byte[] digest) {
+        this.bytes = bytes;
+        this.digest = digest;
+        this.hashCode = ByteBuffer.wrap(digest).getInt();
+    }
+
+    /**
+     * Returns the canonical payload with the given content. The array is copied only if no equal payload is live.
+     */
+    @JsonCreator
+    public static FilterPayload of(byte[] bytes) {
+        byte[] digest = sha256(bytes);
+        ByteBuffer key = ByteBuffer.wrap(digest);
+
+        synchronized (INTERNED) {
+            expungeCollected();
+
+            PayloadReference ref = INTERNED.get(key);
+            FilterPayload payload = (ref == null) ? null : ref.get();
+            if (payload == null) {
+                payload = new FilterPayload(bytes.clone(), digest);
+                INTERNED.put(key, new PayloadReference(payload, key));
+            }
+            return payload;
+        }
+    }
+
+    /**
+     * Returns the content without copying it. Callers must not modify the array.
+     */
+    @JsonValue
+    public byte[] bytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns a read-only view of the content.
+     */
+    public ByteBuffer asBuffer() {
+        return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    public int size() {
+        return bytes.length;
+    }
+
+    public String digest() {
+        StringBuilder sb = new StringBuilder(2 * digest.length);
+        for (byte b : digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        return o instanceof FilterPayload && MessageDigest.isEqual(digest, ((FilterPayload) o).digest);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "FilterPayload{sha256=" + digest() + ", size=" + bytes.length + "}";
+    }
+
+    // callers hold the INTERNED lock
+    private static void expungeCollected() {
+        PayloadReference ref;
+        while ((ref = (PayloadReference) COLLECTED.poll()) != null) {
+            INTERNED.remove(ref.key, ref);
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to hash filter payload", e);
+        }
+    }
+
+    private static final class PayloadReference extends WeakReference<FilterPayload> {
+
+        private final ByteBuffer key;
+
+        PayloadReference(FilterPayload payload, ByteBuffer key) {
+            super(payload, COLLECTED);
+            this.key = key;
+        }
+    }
+}
@@ -41,7 +41,9 @@
 package edu.cmu.cs.diamond.hyperfind.connection.api;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -49,6 +51,19 @@ public interface Search {
 
     Optional<SearchResult> getNextResult();
 
+    /**
+     * Waits up to {@code timeout} for the next result and returns it together with the results that are already
+     * available after it, at most {@code maxResults} in total.
+     *
+     * <p>The default implementation has no way to wait with a timeout, so it blocks on {@link #getNextResult()} and
+     * returns batches of one result.
+     *
+     * @return an empty list if no result arrived in time, or an empty optional once the search has no more results
+     */
+    default Optional<List<SearchResult>> getNextResults(int maxResults, Duration timeout) {
+        return getNextResult().map(List::of);
+    }
+
     SearchStats getStats();
 
     void labelExamples(Map<ObjectId, Integer> examples);
@@ -44,6 +44,7 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public interface SearchFactory {
 
@@ -53,6 +54,42 @@ public interface SearchFactory {
 
     SearchResult getResult(byte[] data, Set<String> attributes);
 
-    Map<ObjectId, SearchResult> getResults(Collection<ObjectId> objectIds, Set<String> attributes);
+    /**
+     * Re-executes the objects and returns the results of those that succeeded. Objects that fail are left out of the
+     * map rather than failing the whole batch, so callers that need every object compare its keys with
+     * {@code objectIds}; the callback variant also reports why each one failed.
+     */
+    default Map<ObjectId, SearchResult> getResults(Collection<ObjectId> objectIds, Set<String> attributes) {
+        Map<ObjectId, SearchResult> results = new ConcurrentHashMap<>();
+        getResults(objectIds, attributes, new ResultCallback() {
+            @Override
+            public void onResult(ObjectId objectId, SearchResult result) {
+                results.put(objectId, result);
+            }
+
+            @Override
+            public void onFailure(ObjectId objectId, RuntimeException error) {
+                // callers find the object missing from the map
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Re-executes the objects, handing each result to the callback as soon as it is ready, and each failure along
+     * with the object it belongs to, so one bad object does not lose the others. Returns once every object is done.
+     */
+    default void getResults(Collection<ObjectId> objectIds, Set<String> attributes, ResultCallback callback) {
+        for (ObjectId id : objectIds) {
+            SearchResult result;
+            try {
+                result = getResult(id, attributes);
+            } catch (RuntimeException e) {
+                callback.onFailure(id, e);
+                continue;
+            }
+            callback.onResult(id, result);
+        }
+    }
 
 }
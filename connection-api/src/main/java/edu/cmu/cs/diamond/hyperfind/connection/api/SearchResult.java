@@ -42,14 +42,26 @@ package edu.cmu.cs.diamond.hyperfind.connection.api;
 
 import java.awt.Color;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalDouble;
 import java.util.OptionalInt;
 import java.util.OptionalLong;
 import java.util.Set;
+import java.util.function.Function;
 
+/**
+ * A search hit and its attributes. Attribute values are kept as little-endian {@link ByteBuffer}s that either wrap
+ * the arrays they were created from or are slices of one shared buffer (see {@link #fromBuffer}), so reading
+ * numbers does not allocate and nothing is copied unless a caller asks for a {@code byte[]} the result does not
+ * already hold. Decoded strings are memoized.
+ */
 public final class SearchResult {
 
     public static final String DATA_ATTR = "";
@@ -57,21 +69,111 @@ public final class SearchResult {
     private static final String NAME_ATTR = "Display-Name";
 
     private final ObjectId id;
-    private final Map<String, byte[]> attributes;
+    // sorted, for binary search
+    private final String[] keys;
+    private final ByteBuffer[] values;
+    private final String[] strings;
     private final Optional<Color> borderColor;
+    private final Set<String> keySet = new KeySet();
 
     public SearchResult(ObjectId id, Map<String, byte[]> attributes, Optional<Color> borderColor) {
+        this(id, attributes.keySet(), attributes::get, borderColor);
+    }
+
+    private SearchResult(ObjectId id, String[] keys, ByteBuffer[] values, Optional<Color> borderColor) {
+        sortByKey(keys, values);
         this.id = id;
-        this.attributes = attributes;
+        this.keys = keys;
+        this.values = values;
+        this.strings = new String[keys.length];
         this.borderColor = borderColor;
     }
 
+    private SearchResult(ObjectId id, Collection<String> keys, Function<String, byte[]> values,
+            Optional<Color> borderColor) {
+        this(id, keys.toArray(new String[0]), wrapAll(keys, values), borderColor);
+    }
+
+    /**
+     * Creates a result without copying the attribute values or collecting them into an intermediate map.
+     */
+    public static SearchResult of(ObjectId id, Collection<String> keys, Function<String, byte[]> values,
+            Optional<Color> borderColor) {
+        return new SearchResult(id, keys, values, borderColor);
+    }
+
+    /**
+     * Creates a result whose attribute values are slices of {@code buffer}, which holds attributes in the format
+     * written by {@link #toBuffer()}. The buffer, heap or direct, must not be modified afterwards.
+     */
+    public static SearchResult fromBuffer(ObjectId id, ByteBuffer buffer, Optional<Color> borderColor) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        int count = in.getInt();
+        String[] keys = new String[count];
+        ByteBuffer[] values = new ByteBuffer[count];
+
+        for (int i = 0; i < count; i++) {
+            byte[] key = new byte[in.getInt()];
+            in.get(key);
+            keys[i] = new String(key, StandardCharsets.UTF_8);
+
+            int length = in.getInt();
+            ByteBuffer value = in.slice();
+            value.limit(length);
+            values[i] = value.order(ByteOrder.LITTLE_ENDIAN);
+            in.position(in.position() + length);
+        }
+
+        return new SearchResult(id, keys, values, borderColor);
+    }
+
+    /**
+     * Encodes the attributes (but not the id or border color) as a count followed by length-prefixed key and value
+     * pairs, all little-endian, which {@link #fromBuffer} reads back.
+     */
+    public ByteBuffer toBuffer() {
+        byte[][] encodedKeys = new byte[keys.length][];
+        int size = Integer.BYTES;
+        for (int i = 0; i < keys.length; i++) {
+            encodedKeys[i] = keys[i].getBytes(StandardCharsets.UTF_8);
+            size += 2 * Integer.BYTES + encodedKeys[i].length + values[i].remaining();
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            out.putInt(encodedKeys[i].length);
+            out.put(encodedKeys[i]);
+            out.putInt(values[i].remaining());
+            out.put(values[i].duplicate());
+        }
+        return out.flip();
+    }
+
+    /**
+     * Returns a copy of this result without the given attributes. The remaining values are shared, not copied.
+     */
+    public SearchResult withoutAttributes(String... attrNames) {
+        String[] newKeys = Arrays.stream(keys)
+                .filter(k -> Arrays.stream(attrNames).noneMatch(k::equals))
+                .toArray(String[]::new);
+        if (newKeys.length == keys.length) {
+            return this;
+        }
+
+        ByteBuffer[] newValues = new ByteBuffer[newKeys.length];
+        for (int i = 0; i < newKeys.length; i++) {
+            newValues[i] = values[indexOf(newKeys[i])];
+        }
+        return new SearchResult(id, newKeys, newValues, borderColor);
+    }
+
     public ObjectId getId() {
         return id;
     }
 
     public Set<String> getKeys() {
-        return attributes.keySet();
+        return keySet;
     }
 
     public String getName() {
@@ -80,57 +182,146 @@ public final class SearchResult {
     }
 
     public byte[] getData() {
-        return attributes.get(DATA_ATTR);
+        return getBytes(DATA_ATTR).orElse(null);
     }
 
+    /**
+     * Returns the value as an array, which is only copied if the value is a slice of a larger buffer.
+     */
     public Optional<byte[]> getBytes(String attrName) {
-        return Optional.ofNullable(attributes.get(attrName));
+        int i = indexOf(attrName);
+        return (i < 0) ? Optional.empty() : Optional.of(toArray(values[i]));
     }
 
-    public OptionalInt getInt(String attrName) {
-        Optional<byte[]> bytes = getBytes(attrName);
+    /**
+     * Returns a read-only, little-endian view of the value without copying it.
+     */
+    public Optional<ByteBuffer> getBuffer(String attrName) {
+        int i = indexOf(attrName);
+        return (i < 0)
+                ? Optional.empty()
+                : Optional.of(values[i].asReadOnlyBuffer().order(ByteOrder.LITTLE_ENDIAN));
+    }
 
-        if (bytes.isEmpty()) {
-            return OptionalInt.empty();
-        }
+    public OptionalInt getInt(String attrName) {
+        int i = indexOf(attrName);
+        return (i < 0) ? OptionalInt.empty() : OptionalInt.of(values[i].getInt(0));
+    }
 
-        return OptionalInt.of(ByteBuffer.wrap(bytes.get()).order(java.nio.ByteOrder.LITTLE_ENDIAN).getInt());
+    public int getInt(String attrName, int defaultValue) {
+        int i = indexOf(attrName);
+        return (i < 0) ? defaultValue : values[i].getInt(0);
     }
 
     public OptionalLong getLong(String attrName) {
-        Optional<byte[]> bytes = getBytes(attrName);
-
-        if (bytes.isEmpty()) {
-            return OptionalLong.empty();
-        }
+        int i = indexOf(attrName);
+        return (i < 0) ? OptionalLong.empty() : OptionalLong.of(values[i].getLong(0));
+    }
 
-        return OptionalLong.of(ByteBuffer.wrap(bytes.get()).order(java.nio.ByteOrder.LITTLE_ENDIAN).getLong());
+    public long getLong(String attrName, long defaultValue) {
+        int i = indexOf(attrName);
+        return (i < 0) ? defaultValue : values[i].getLong(0);
     }
 
     public OptionalDouble getDouble(String attrName) {
-        Optional<byte[]> bytes = getBytes(attrName);
+        int i = indexOf(attrName);
+        return (i < 0) ? OptionalDouble.empty() : OptionalDouble.of(values[i].getDouble(0));
+    }
 
-        if (bytes.isEmpty()) {
-            return OptionalDouble.empty();
-        }
+    public double getDouble(String attrName, double defaultValue) {
+        int i = indexOf(attrName);
+        return (i < 0) ? defaultValue : values[i].getDouble(0);
+    }
+
+    public Optional<String> getString(String attrName) {
+        int i = indexOf(attrName);
+        return (i < 0) ? Optional.empty() : Optional.of(decodeString(i));
+    }
+
+    public String getString(String attrName, String defaultValue) {
+        int i = indexOf(attrName);
+        return (i < 0) ? defaultValue : decodeString(i);
+    }
+
+    public Optional<Color> getBorderColor() {
+        return borderColor;
+    }
 
-        return OptionalDouble.of(Double.longBitsToDouble(ByteBuffer.wrap(bytes.get())
-                .order(java.nio.ByteOrder.LITTLE_ENDIAN)
-                .getLong()));
+    private int indexOf(String attrName) {
+        return Arrays.binarySearch(keys, attrName);
     }
 
     // TODO(hturki): deduplicate with opendiamond-java's Utils class
-    public Optional<String> getString(String attrName) {
-        return getBytes(attrName).map(value -> {
-            if (value.length == 0) {
-                return "";
+    private String decodeString(int i) {
+        // racing threads decode the same string, so no need to synchronize
+        String value = strings[i];
+        if (value == null) {
+            ByteBuffer bytes = values[i];
+            if (bytes.remaining() == 0) {
+                value = "";
+            } else if (bytes.hasArray()) {
+                value = new String(
+                        bytes.array(),
+                        bytes.arrayOffset() + bytes.position(),
+                        bytes.remaining() - 1,
+                        StandardCharsets.UTF_8);
             } else {
-                return new String(value, 0, value.length - 1, StandardCharsets.UTF_8);
+                byte[] array = toArray(bytes);
+                value = new String(array, 0, array.length - 1, StandardCharsets.UTF_8);
             }
-        });
+            strings[i] = value;
+        }
+        return value;
     }
 
-    public Optional<Color> getBorderColor() {
-        return borderColor;
+    private static byte[] toArray(ByteBuffer value) {
+        if (value.hasArray() && value.arrayOffset() == 0 && value.position() == 0
+                && value.remaining() == value.array().length) {
+            return value.array();
+        }
+
+        byte[] copy = new byte[value.remaining()];
+        value.duplicate().get(copy);
+        return copy;
+    }
+
+    private static ByteBuffer[] wrapAll(Collection<String> keys, Function<String, byte[]> values) {
+        return keys.stream()
+                .map(k -> ByteBuffer.wrap(values.apply(k)).order(ByteOrder.LITTLE_ENDIAN))
+                .toArray(ByteBuffer[]::new);
+    }
+
+    // insertion sort, results only carry a few dozen attributes
+    private static void sortByKey(String[] keys, ByteBuffer[] values) {
+        for (int i = 1; i < keys.length; i++) {
+            String key = keys[i];
+            ByteBuffer value = values[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j].compareTo(key) > 0) {
+                keys[j + 1] = keys[j];
+                values[j + 1] = values[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            values[j + 1] = value;
+        }
+    }
+
+    private final class KeySet extends AbstractSet<String> {
+
+        @Override
+        public Iterator<String> iterator() {
+            return Arrays.asList(keys).iterator();
+        }
+
+        @Override
+        public int size() {
+            return keys.length;
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof String && indexOf((String) o) >= 0;
+        }
     }
 }
@@ -41,6 +41,7 @@
 package edu.cmu.cs.diamond.hyperfind.connection.diamond;
 
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.cmu.cs.diamond.hyperfind.connection.api.Connection;
 import edu.cmu.cs.diamond.hyperfind.connection.api.Filter;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
@@ -59,7 +60,6 @@ import java.util.Arrays;
 import java.util.List;
 import java.util.Optional;
 import java.util.Properties;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.stream.Collectors;
 
@@ -71,7 +71,7 @@ public final class DiamondConnection implements Connection {
             .toFile();
 
     private final BundleFactory bundleFactory;
-    private final ExecutorService downloadExecutor;
+    private final ServerPool servers;
     private final Properties configProps = loadProperties();
 
     private CookieMap cookieMap;
@@ -79,7 +79,11 @@ public final class DiamondConnection implements Connection {
 
     public DiamondConnection(String bundleDirs, String filterDirs) {
         this.bundleFactory = new BundleFactory(splitDirs(bundleDirs), splitDirs(filterDirs));
-        this.downloadExecutor = Executors.newFixedThreadPool(8);
+        this.servers = new ServerPool(
+                Executors.newFixedThreadPool(
+                        Math.max(1, Integer.parseInt(configProps.getProperty("downloadThreads"))),
+                        new ThreadFactoryBuilder().setNameFormat("diamond-download-%d").setDaemon(true).build()),
+                Math.max(1, Integer.parseInt(configProps.getProperty("requestsPerServer"))));
 
         updateCookies(Optional.ofNullable(configProps.getProperty("proxyIP")));
         downloadPathRoot = Optional.ofNullable(configProps.getProperty("downloadDirectory")).map(Paths::get);
@@ -87,7 +91,7 @@ public final class DiamondConnection implements Connection {
 
     @Override
     public SearchFactory getSearchFactory(List<Filter> filters) {
-        return new DiamondSearchFactory(filters, cookieMap, downloadPathRoot, downloadExecutor);
+        return new DiamondSearchFactory(filters, cookieMap, downloadPathRoot, servers);
     }
 
     @Override
@@ -131,6 +135,11 @@ public final class DiamondConnection implements Connection {
         return false;
     }
 
+    @Override
+    public boolean supportsPredicateFiles() {
+        return true;
+    }
+
     private static List<File> splitDirs(String paths) {
         return Arrays.stream(paths.split(":")).map(File::new).filter(File::isDirectory).collect(Collectors.toList());
     }
@@ -141,6 +150,8 @@ public final class DiamondConnection implements Connection {
         defaultProps.setProperty("useProxy", "false");
         defaultProps.setProperty("downloadResults", "false");
         defaultProps.setProperty("downloadDirectory", System.getProperty("user.home"));
+        defaultProps.setProperty("downloadThreads", "8");
+        defaultProps.setProperty("requestsPerServer", "4");
 
         Properties props = new Properties(defaultProps);
 
@@ -40,38 +40,93 @@
 
 package edu.cmu.cs.diamond.hyperfind.connection.diamond;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import edu.cmu.cs.diamond.hyperfind.connection.api.FeedbackObject;
 import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
 import edu.cmu.cs.diamond.hyperfind.connection.api.Search;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchStats;
+import edu.cmu.cs.diamond.opendiamond.Result;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.OptionalLong;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 public final class DiamondSearch implements Search {
 
+    // Results read ahead of the client. Once full, the reader stops pulling from the server, which in turn
+    // throttles the search.
+    private static final int RESULT_QUEUE_SIZE = 64;
+
+    private static final Object END_OF_RESULTS = new Object();
+
     private final edu.cmu.cs.diamond.opendiamond.Search delegate;
     private final Optional<Path> exportDir;
 
+    // holds Results, followed by END_OF_RESULTS or the exception that ended the search
+    private final BlockingQueue<Object> results = new ArrayBlockingQueue<>(RESULT_QUEUE_SIZE);
+    private final Thread reader;
+
     public DiamondSearch(edu.cmu.cs.diamond.opendiamond.Search delegate, Optional<Path> exportDir) {
         this.delegate = delegate;
         this.exportDir = exportDir;
+        this.reader = new ThreadFactoryBuilder()
+                .setNameFormat("diamond-results-%d")
+                .setDaemon(true)
+                .build()
+                .newThread(this::readResults);
+        this.reader.start();
     }
 
     @Override
     public Optional<SearchResult> getNextResult() {
         try {
-            return Optional.ofNullable(delegate.getNextResult()).map(FromDiamond::convert);
-        } catch (InterruptedException | IOException e) {
+            Object item = results.take();
+            return isEnd(item) ? Optional.empty() : Optional.of(FromDiamond.convert((Result) item));
+        } catch (InterruptedException e) {
             throw new RuntimeException("Failed to get next result", e);
         }
     }
 
+    @Override
+    public Optional<List<SearchResult>> getNextResults(int maxResults, Duration timeout) {
+        List<Object> items = new ArrayList<>();
+        try {
+            Object first = results.poll(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            if (first == null) {
+                return Optional.of(List.of());
+            }
+            if (isEnd(first)) {
+                return Optional.empty();
+            }
+            items.add(first);
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Failed to get next results", e);
+        }
+
+        results.drainTo(items, maxResults - 1);
+
+        List<SearchResult> batch = new ArrayList<>(items.size());
+        for (Object item : items) {
+            if (!(item instanceof Result)) {
+                // report the end with the next call, after the results that came before it
+                results.offer(item);
+                break;
+            }
+            batch.add(FromDiamond.convert((Result) item));
+        }
+        return Optional.of(batch);
+    }
+
     @Override
     public SearchStats getStats() {
         try {
@@ -106,6 +161,7 @@ public final class DiamondSearch implements Search {
 
     @Override
     public void close() {
+        reader.interrupt();
         delegate.close();
     }
 
@@ -113,4 +169,38 @@ public final class DiamondSearch implements Search {
     public Optional<Path> getExportDir() {
         return exportDir;
     }
+
+    private void readResults() {
+        Object end = END_OF_RESULTS;
+        try {
+            Result result;
+            while ((result = delegate.getNextResult()) != null) {
+                results.put(result);
+            }
+        } catch (InterruptedException e) {
+            // closed
+            return;
+        } catch (IOException | RuntimeException e) {
+            end = e;
+        }
+
+        try {
+            results.put(end);
+        } catch (InterruptedException e) {
+            // closed
+        }
+    }
+
+    // Returns true at the end of the results, which stays queued for later calls, or throws if they ended in error
+    private boolean isEnd(Object item) {
+        if (item instanceof Result) {
+            return false;
+        }
+
+        results.offer(item);
+        if (item instanceof Exception) {
+            throw new RuntimeException("Failed to get next result", (Exception) item);
+        }
+        return true;
+    }
 }
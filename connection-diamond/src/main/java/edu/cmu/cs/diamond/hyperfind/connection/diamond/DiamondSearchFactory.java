@@ -43,22 +43,28 @@ package edu.cmu.cs.diamond.hyperfind.connection.diamond;
 import edu.cmu.cs.diamond.hyperfind.connection.api.Filter;
 import edu.cmu.cs.diamond.hyperfind.connection.api.HyperFindPredicateState;
 import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ResultCallback;
 import edu.cmu.cs.diamond.hyperfind.connection.api.Search;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
 import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import edu.cmu.cs.diamond.hyperfind.connection.diamond.InFlightResults.PendingResult;
 import edu.cmu.cs.diamond.opendiamond.CookieMap;
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import one.util.streamex.EntryStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -68,18 +74,19 @@ public final class DiamondSearchFactory implements SearchFactory {
 
     private final Optional<Path> downloadPathRoot;
     private final edu.cmu.cs.diamond.opendiamond.SearchFactory delegate;
-    private final ExecutorService downloadExecutor;
+    private final ServerPool servers;
+    private final InFlightResults inFlight = new InFlightResults();
 
     public DiamondSearchFactory(
             List<Filter> filters,
             CookieMap cookieMap,
             Optional<Path> downloadPathRoot,
-            ExecutorService downloadExecutor) {
+            ServerPool servers) {
         this.downloadPathRoot = downloadPathRoot;
         this.delegate = new edu.cmu.cs.diamond.opendiamond.SearchFactory(
                 filters.stream().map(ToDiamond::convert).collect(Collectors.toList()),
                 cookieMap);
-        this.downloadExecutor = downloadExecutor;
+        this.servers = servers;
     }
 
     @Override
@@ -95,11 +102,11 @@ public final class DiamondSearchFactory implements SearchFactory {
 
     @Override
     public SearchResult getResult(ObjectId objectId, Set<String> attributes) {
-        try {
-            return FromDiamond.convert(delegate.generateResult(ToDiamond.convert(objectId), attributes));
-        } catch (IOException e) {
-            throw new RuntimeException("Failed to get result", e);
+        PendingResult pending = inFlight.join(objectId, attributes);
+        if (pending.isOwner()) {
+            start(objectId, pending);
         }
+        return await(pending.future(), "Failed to get result");
     }
 
     @Override
@@ -113,18 +120,77 @@ public final class DiamondSearchFactory implements SearchFactory {
 
     @Override
     public Map<ObjectId, SearchResult> getResults(Collection<ObjectId> objectIds, Set<String> attributes) {
-        Map<ObjectId, Future<SearchResult>> downloadFutures =
-                objectIds.stream().collect(Collectors.toMap(i -> i, i -> downloadExecutor.submit(() -> {
-                    log.info("Fetching item: {}", i.objectId());
-                    return getResult(i, attributes);
-                })));
-
-        return EntryStream.of(downloadFutures).mapValues(f -> {
-            try {
-                return f.get();
-            } catch (InterruptedException | ExecutionException e) {
-                throw new RuntimeException("Failed to download image", e);
+        Map<ObjectId, SearchResult> results = new ConcurrentHashMap<>();
+        getResults(objectIds, attributes, new ResultCallback() {
+            @Override
+            public void onResult(ObjectId objectId, SearchResult result) {
+                results.put(objectId, result);
             }
-        }).toMap();
+
+            @Override
+            public void onFailure(ObjectId objectId, RuntimeException error) {
+                log.warn("Failed to download {}", objectId.objectId(), error);
+            }
+        });
+        return results;
+    }
+
+    /**
+     * Queues the objects with their servers, which work through them with their own concurrency limits, so a large
+     * batch keeps every server busy without one of them taking over the download pool.
+     */
+    @Override
+    public void getResults(Collection<ObjectId> objectIds, Set<String> attributes, ResultCallback callback) {
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> reported = new ArrayList<>();
+
+        // ownership is decided here rather than in the tasks, so no download thread ever waits on another request
+        for (ObjectId id : new LinkedHashSet<>(objectIds)) {
+            PendingResult pending = inFlight.join(id, attributes);
+            if (pending.isOwner()) {
+                start(id, pending);
+            }
+            reported.add(pending.future().handle((result, error) -> {
+                if (error == null) {
+                    callback.onResult(id, result);
+                } else {
+                    callback.onFailure(id, new RuntimeException("Failed to get result " + id.objectId(), error));
+                }
+                return null;
+            }));
+        }
+
+        try {
+            CompletableFuture.allOf(reported.toArray(new CompletableFuture<?>[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while downloading results", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to hand over downloaded result", e.getCause());
+        }
+
+        log.info("Fetched {} objects in {} ms", reported.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        log.debug("{}", servers);
+    }
+
+    private void start(ObjectId objectId, PendingResult pending) {
+        log.debug("Fetching item: {}", objectId.objectId());
+        Callable<SearchResult> request =
+                () -> FromDiamond.convert(delegate.generateResult(ToDiamond.convert(objectId), pending.attributes()));
+
+        servers.submit(objectId.hostname(), request)
+                .whenComplete((result, error) -> inFlight.finish(objectId, pending, result, error));
+    }
+
+    private static SearchResult await(Future<SearchResult> future, String message) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(message, e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(message, e.getCause());
+        }
     }
 }
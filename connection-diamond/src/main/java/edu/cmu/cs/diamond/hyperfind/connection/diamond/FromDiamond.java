@@ -77,9 +77,10 @@ public final class FromDiamond {
     }
 
     public static SearchResult convert(Result value) {
-        return new SearchResult(
+        return SearchResult.of(
                 convert(value.getObjectIdentifier()),
-                value.getKeys().stream().collect(Collectors.toMap(k -> k, value::getValue)),
+                value.getKeys(),
+                value::getValue,
                 Optional.empty());
     }
 
@@ -0,0 +1,135 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.diamond;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Results being fetched, which requests for the same object and no more attributes wait for instead of asking the
+ * server again. An empty attribute set asks for every attribute, as it does for the server.
+ */
+final class InFlightResults {
+
+    // guarded by itself
+    private final Map<ObjectId, List<PendingResult>> requests = new HashMap<>();
+
+    /**
+     * Returns the request already fetching the object with at least the given attributes, or registers a new one
+     * that the caller owns and must {@link #finish}.
+     */
+    PendingResult join(ObjectId objectId, Set<String> attributes) {
+        synchronized (requests) {
+            List<PendingResult> pending = requests.computeIfAbsent(objectId, _id -> new ArrayList<>());
+            for (PendingResult request : pending) {
+                if (covers(request.attributes, attributes)) {
+                    return new PendingResult(request.attributes, request.future, false);
+                }
+            }
+
+            PendingResult request = new PendingResult(Set.copyOf(attributes), new CompletableFuture<>(), true);
+            pending.add(request);
+            return request;
+        }
+    }
+
+    /** Stops sharing the request and hands its outcome to everyone waiting on it. */
+    void finish(ObjectId objectId, PendingResult request, SearchResult result, Throwable error) {
+        synchronized (requests) {
+            List<PendingResult> pending = requests.get(objectId);
+            pending.remove(request);
+            if (pending.isEmpty()) {
+                requests.remove(objectId);
+            }
+        }
+
+        if (error == null) {
+            request.future.complete(result);
+        } else {
+            request.future.completeExceptionally(error);
+        }
+    }
+
+    int size() {
+        synchronized (requests) {
+            return requests.values().stream().mapToInt(List::size).sum();
+        }
+    }
+
+    private static boolean covers(Set<String> fetching, Set<String> wanted) {
+        if (fetching.isEmpty()) {
+            return true;
+        }
+        return !wanted.isEmpty() && fetching.containsAll(wanted);
+    }
+
+    static final class PendingResult {
+
+        private final Set<String> attributes;
+        private final CompletableFuture<SearchResult> future;
+        // whether the holder has to fetch the result, rather than wait for another request
+        private final boolean owner;
+
+        PendingResult(Set<String> attributes, CompletableFuture<SearchResult> future, boolean owner) {
+            this.attributes = attributes;
+            this.future = future;
+            this.owner = owner;
+        }
+
+        Set<String> attributes() {
+            return attributes;
+        }
+
+        CompletableFuture<SearchResult> future() {
+            return future;
+        }
+
+        boolean isOwner() {
+            return owner;
+        }
+    }
+}
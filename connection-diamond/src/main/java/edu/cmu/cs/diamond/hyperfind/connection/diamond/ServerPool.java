@@ -0,0 +1,176 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.diamond;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs requests to Diamond servers on the shared download pool, each server with its own cap on concurrent requests
+ * and its own queue, so one slow server cannot take every download thread from the others. Requests to a server
+ * start in the order they were submitted.
+ *
+ * <p>Each server's latency and failures are tracked. A server that keeps failing is given one request at a time
+ * until a request succeeds again.
+ */
+final class ServerPool {
+
+    private static final Logger log = LoggerFactory.getLogger(ServerPool.class);
+
+    // weight of the newest sample in the moving average of a server's latency
+    private static final double LATENCY_WEIGHT = 0.2;
+    private static final int FAILURES_BEFORE_BACKOFF = 3;
+
+    private final Executor executor;
+    private final int maxRequestsPerServer;
+    // guarded by this
+    private final Map<String, Server> servers = new HashMap<>();
+
+    ServerPool(Executor executor, int maxRequestsPerServer) {
+        this.executor = executor;
+        this.maxRequestsPerServer = maxRequestsPerServer;
+    }
+
+    /**
+     * Queues a request to the server and runs it once the server has a free slot.
+     */
+    <T> CompletableFuture<T> submit(String hostname, Callable<T> request) {
+        Server server;
+        synchronized (this) {
+            server = servers.computeIfAbsent(hostname, Server::new);
+        }
+
+        CompletableFuture<T> future = new CompletableFuture<>();
+        server.submit(() -> {
+            try {
+                future.complete(request.call());
+                return true;
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+                return false;
+            }
+        });
+        return future;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return servers.values().stream().map(Server::toString).collect(Collectors.joining(", ", "ServerPool{", "}"));
+    }
+
+    private final class Server {
+
+        private final String hostname;
+        // guarded by this
+        private final Queue<Callable<Boolean>> queue = new ArrayDeque<>();
+        private int active;
+        private long succeeded;
+        private long failed;
+        private int consecutiveFailures;
+        private double latencyMillis;
+
+        Server(String hostname) {
+            this.hostname = hostname;
+        }
+
+        synchronized void submit(Callable<Boolean> request) {
+            queue.add(request);
+            dispatch();
+        }
+
+        // callers hold the lock
+        private void dispatch() {
+            int limit = (consecutiveFailures >= FAILURES_BEFORE_BACKOFF) ? 1 : maxRequestsPerServer;
+            while (active < limit && !queue.isEmpty()) {
+                Callable<Boolean> request = queue.poll();
+                active++;
+                executor.execute(() -> run(request));
+            }
+        }
+
+        private void run(Callable<Boolean> request) {
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                success = request.call();
+            } catch (Exception e) {
+                // requests report their own failures through their futures
+                log.error("Unexpected failure talking to {}", hostname, e);
+            } finally {
+                finished(success, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            }
+        }
+
+        private synchronized void finished(boolean success, long millis) {
+            active--;
+            if (success) {
+                if (consecutiveFailures >= FAILURES_BEFORE_BACKOFF) {
+                    log.info("{} is responding again", hostname);
+                }
+                succeeded++;
+                consecutiveFailures = 0;
+                latencyMillis = (succeeded == 1) ? millis : latencyMillis + LATENCY_WEIGHT * (millis - latencyMillis);
+            } else {
+                failed++;
+                if (++consecutiveFailures == FAILURES_BEFORE_BACKOFF) {
+                    log.warn("{} failed {} requests in a row, sending it one request at a time", hostname,
+                            consecutiveFailures);
+                }
+            }
+            dispatch();
+        }
+
+        @Override
+        public synchronized String toString() {
+            return String.format("%s: %d active, %d queued, %d ok, %d failed, %.0f ms",
+                    hostname, active, queue.size(), succeeded, failed, latencyMillis);
+        }
+    }
+}
@@ -40,26 +40,39 @@
 
 package edu.cmu.cs.diamond.hyperfind.connection.diamond;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import edu.cmu.cs.diamond.hyperfind.connection.api.FeedbackObject;
 import edu.cmu.cs.diamond.hyperfind.connection.api.Filter;
 import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
 import edu.cmu.cs.diamond.opendiamond.FilterCode;
 import edu.cmu.cs.diamond.opendiamond.ObjectIdentifier;
+import java.util.concurrent.ExecutionException;
 
 public final class ToDiamond {
 
+    // opendiamond filters hash their code and blob when built; reuse them for searches that repeat a filter
+    private static final Cache<Filter, edu.cmu.cs.diamond.opendiamond.Filter> FILTERS = CacheBuilder.newBuilder()
+            .maximumSize(64)
+            .softValues()
+            .build();
+
     private ToDiamond() {
     }
 
     public static edu.cmu.cs.diamond.opendiamond.Filter convert(Filter value) {
-        return new edu.cmu.cs.diamond.opendiamond.Filter(
-                value.name(),
-                new FilterCode(value.code()),
-                value.minScore(),
-                value.maxScore(),
-                value.dependencies(),
-                value.arguments(),
-                value.blob());
+        try {
+            return FILTERS.get(value, () -> new edu.cmu.cs.diamond.opendiamond.Filter(
+                    value.name(),
+                    new FilterCode(value.code().bytes()),
+                    value.minScore(),
+                    value.maxScore(),
+                    value.dependencies(),
+                    value.arguments(),
+                    value.blob().bytes()));
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Failed to convert filter " + value.name(), e.getCause());
+        }
     }
 
     public static ObjectIdentifier convert(ObjectId value) {
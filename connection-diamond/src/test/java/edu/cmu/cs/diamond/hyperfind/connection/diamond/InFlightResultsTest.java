@@ -0,0 +1,123 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.diamond;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import edu.cmu.cs.diamond.hyperfind.connection.diamond.InFlightResults.PendingResult;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import org.junit.jupiter.api.Test;
+
+class InFlightResultsTest {
+
+    private static final ObjectId ID = ObjectId.of("obj", "dev", "host");
+
+    private final InFlightResults inFlight = new InFlightResults();
+
+    @Test
+    void joinsRequestWithMoreAttributes() {
+        PendingResult owner = inFlight.join(ID, Set.of("a", "b"));
+        PendingResult waiter = inFlight.join(ID, Set.of("a"));
+
+        assertTrue(owner.isOwner());
+        assertFalse(waiter.isOwner());
+        assertSame(owner.future(), waiter.future());
+    }
+
+    @Test
+    void doesNotJoinRequestWithFewerAttributes() {
+        inFlight.join(ID, Set.of("a"));
+
+        assertTrue(inFlight.join(ID, Set.of("a", "b")).isOwner());
+    }
+
+    @Test
+    void emptyRequestCoversAnyAttributes() {
+        PendingResult all = inFlight.join(ID, Set.of());
+        PendingResult some = inFlight.join(ID, Set.of("a", "b"));
+
+        assertFalse(some.isOwner());
+        assertSame(all.future(), some.future());
+    }
+
+    @Test
+    void emptyRequestDoesNotJoinNonEmptyRequest() {
+        PendingResult some = inFlight.join(ID, Set.of("a", "b"));
+        PendingResult all = inFlight.join(ID, Set.of());
+
+        assertTrue(all.isOwner());
+        assertFalse(inFlight.join(ID, Set.of()).isOwner());
+        assertSame(all.future(), inFlight.join(ID, Set.of("c")).future());
+        assertEquals(2, inFlight.size());
+        assertFalse(some.future().isDone());
+    }
+
+    @Test
+    void finishCompletesWaitersAndForgetsRequest() {
+        PendingResult owner = inFlight.join(ID, Set.of("a"));
+        PendingResult waiter = inFlight.join(ID, Set.of("a"));
+        SearchResult result = new SearchResult(ID, Map.of("a", new byte[] {1}), Optional.empty());
+
+        inFlight.finish(ID, owner, result, null);
+
+        assertSame(result, waiter.future().join());
+        assertEquals(0, inFlight.size());
+        assertTrue(inFlight.join(ID, Set.of("a")).isOwner());
+    }
+
+    @Test
+    void finishPropagatesFailure() {
+        PendingResult owner = inFlight.join(ID, Set.of());
+        PendingResult waiter = inFlight.join(ID, Set.of("a"));
+
+        inFlight.finish(ID, owner, null, new IllegalStateException("boom"));
+
+        assertTrue(waiter.future().isCompletedExceptionally());
+        assertEquals(0, inFlight.size());
+    }
+}
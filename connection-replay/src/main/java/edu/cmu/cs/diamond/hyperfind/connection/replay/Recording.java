@@ -0,0 +1,219 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.replay;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.ModelStats;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchStats;
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+
+/**
+ * A recorded search, memory-mapped for replay. Results are read straight out of the mapping with
+ * {@link SearchResult#fromBuffer}, so replaying does not copy attribute values.
+ *
+ * <p>A recording is a header followed by records, all little-endian. Each record is a one byte type, the nanoseconds
+ * since the search started, the payload length and the payload. See {@link RecordingWriter} for the payloads.
+ */
+final class Recording {
+
+    static final long MAGIC = 0x3130_4345_5246_4848L; // "HHFREC01"
+
+    static final byte RESULT = 1;
+    static final byte DETAIL = 2;
+    static final byte STATS = 3;
+    static final byte END = 4;
+
+    static final int HEADER_SIZE = Long.BYTES;
+    static final int RECORD_HEADER_SIZE = Byte.BYTES + Long.BYTES + Integer.BYTES;
+
+    private final MappedByteBuffer buffer;
+    private final byte[] types;
+    private final long[] times;
+    private final int[] offsets;
+    private final int count;
+    private final Map<ObjectId, Integer> detailRecords = new HashMap<>();
+
+    private Recording(MappedByteBuffer buffer) {
+        this.buffer = buffer;
+
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        if (in.remaining() < HEADER_SIZE || in.getLong() != MAGIC) {
+            throw new IllegalArgumentException("Not a HyperFind search recording");
+        }
+
+        byte[] recordTypes = new byte[1024];
+        long[] recordTimes = new long[1024];
+        int[] recordOffsets = new int[1024];
+        int n = 0;
+
+        // a recording cut short by a crash ends at the last complete record
+        while (in.remaining() >= RECORD_HEADER_SIZE) {
+            int offset = in.position();
+            byte type = in.get();
+            long time = in.getLong();
+            int length = in.getInt();
+            if (length < 0 || length > in.remaining()) {
+                break;
+            }
+
+            if (n == recordTypes.length) {
+                recordTypes = Arrays.copyOf(recordTypes, 2 * n);
+                recordTimes = Arrays.copyOf(recordTimes, 2 * n);
+                recordOffsets = Arrays.copyOf(recordOffsets, 2 * n);
+            }
+            recordTypes[n] = type;
+            recordTimes[n] = time;
+            recordOffsets[n] = offset;
+            n++;
+
+            in.position(in.position() + length);
+        }
+
+        this.types = recordTypes;
+        this.times = recordTimes;
+        this.offsets = recordOffsets;
+        this.count = n;
+
+        // popups ask for results by id, prefer the fully fetched copy over the one from the search
+        for (int i = 0; i < count; i++) {
+            if (types[i] == DETAIL || (types[i] == RESULT && !detailRecords.containsKey(readId(i)))) {
+                detailRecords.put(readId(i), i);
+            }
+        }
+    }
+
+    static Recording open(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Recordings over 2 GB are not supported: " + path);
+            }
+            // the mapping stays valid after the channel is closed
+            return new Recording(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open search recording " + path, e);
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    byte getType(int record) {
+        return types[record];
+    }
+
+    /**
+     * Nanoseconds since the start of the recorded search.
+     */
+    long getTime(int record) {
+        return times[record];
+    }
+
+    SearchResult getResult(int record) {
+        ByteBuffer in = payload(record);
+        ObjectId id = readId(in);
+        boolean hasColor = in.get() != 0;
+        int argb = in.getInt();
+        Optional<Color> color = hasColor ? Optional.of(new Color(argb, true)) : Optional.empty();
+        return SearchResult.fromBuffer(id, in.slice(), color);
+    }
+
+    Optional<SearchResult> getResult(ObjectId id) {
+        return Optional.ofNullable(detailRecords.get(id)).map(this::getResult);
+    }
+
+    SearchStats getStats(int record) {
+        ByteBuffer in = payload(record);
+        long total = in.getLong();
+        long processed = in.getLong();
+        long dropped = in.getLong();
+        OptionalLong passed = readOptionalLong(in);
+        long falseNegatives = in.getLong();
+        boolean hasModel = in.get() != 0;
+        ModelStats modelStats = ModelStats.of(
+                in.getLong(), in.getLong(), in.getDouble(), in.getDouble(), in.getDouble(), in.getDouble());
+        Optional<ModelStats> model = hasModel ? Optional.of(modelStats) : Optional.empty();
+        return SearchStats.of(total, processed, dropped, passed, falseNegatives, model);
+    }
+
+    private ObjectId readId(int record) {
+        return readId(payload(record));
+    }
+
+    private ByteBuffer payload(int record) {
+        ByteBuffer in = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        in.position(offsets[record] + Byte.BYTES + Long.BYTES);
+        int length = in.getInt();
+        ByteBuffer payload = in.slice().order(ByteOrder.LITTLE_ENDIAN);
+        payload.limit(length);
+        return payload;
+    }
+
+    private static ObjectId readId(ByteBuffer in) {
+        return ObjectId.of(readString(in), readString(in), readString(in));
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static OptionalLong readOptionalLong(ByteBuffer in) {
+        boolean present = in.get() != 0;
+        long value = in.getLong();
+        return present ? OptionalLong.of(value) : OptionalLong.empty();
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.replay;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.Connection;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Filter;
+import edu.cmu.cs.diamond.hyperfind.connection.api.RunningSearch;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchInfo;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.Bundle;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.BundleState;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Wraps a connection and records every search made through it, so it can later be played back by
+ * {@link ReplayConnection}. Each search is written to its own file in the recording directory, named after the time
+ * it started.
+ */
+public final class RecordingConnection implements Connection {
+
+    private static final DateTimeFormatter FILE_NAME_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Connection delegate;
+    private final Path directory;
+    private final AtomicInteger searchCount = new AtomicInteger();
+
+    public RecordingConnection(Connection delegate, Path directory) {
+        this.delegate = delegate;
+        this.directory = directory;
+    }
+
+    @Override
+    public SearchFactory getSearchFactory(List<Filter> filters) {
+        return new RecordingSearchFactory(delegate.getSearchFactory(filters), this::createWriter);
+    }
+
+    @Override
+    public List<SearchInfo> getRunningSearches() {
+        return delegate.getRunningSearches().stream()
+                .map(info -> SearchInfo.of(() -> record(info.searchSupplier().get()), info.startTime()))
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public List<Bundle> getBundles() {
+        return delegate.getBundles();
+    }
+
+    @Override
+    public Bundle getBundle(InputStream inputStream) {
+        return delegate.getBundle(inputStream);
+    }
+
+    @Override
+    public Bundle restoreBundle(BundleState state) {
+        return delegate.restoreBundle(state);
+    }
+
+    @Override
+    public void defineScope() {
+        delegate.defineScope();
+    }
+
+    @Override
+    public boolean supportsOfflineSearch() {
+        return delegate.supportsOfflineSearch();
+    }
+
+    @Override
+    public boolean supportsPredicateFiles() {
+        return delegate.supportsPredicateFiles();
+    }
+
+    private RunningSearch record(RunningSearch running) {
+        return RunningSearch.of(
+                new RecordingSearch(running.search(), createWriter()),
+                running.filters(),
+                running.predicateState());
+    }
+
+    private RecordingWriter createWriter() {
+        String name = String.format(
+                "search-%s-%d%s",
+                LocalDateTime.now().format(FILE_NAME_FORMAT),
+                searchCount.incrementAndGet(),
+                ReplayConnection.FILE_EXTENSION);
+        return new RecordingWriter(directory.resolve(name));
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.replay;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.FeedbackObject;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Search;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchStats;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Passes a search through unchanged while recording its results and every statistics sample taken from it.
+ */
+final class RecordingSearch implements Search {
+
+    private final Search delegate;
+    private final RecordingWriter writer;
+
+    RecordingSearch(Search delegate, RecordingWriter writer) {
+        this.delegate = delegate;
+        this.writer = writer;
+    }
+
+    @Override
+    public Optional<SearchResult> getNextResult() {
+        Optional<SearchResult> result = delegate.getNextResult();
+        if (result.isPresent()) {
+            writer.writeResult(result.get());
+        } else {
+            writer.close();
+        }
+        return result;
+    }
+
+    @Override
+    public Optional<List<SearchResult>> getNextResults(int maxResults, Duration timeout) {
+        Optional<List<SearchResult>> results = delegate.getNextResults(maxResults, timeout);
+        if (results.isPresent()) {
+            results.get().forEach(writer::writeResult);
+        } else {
+            writer.close();
+        }
+        return results;
+    }
+
+    @Override
+    public SearchStats getStats() {
+        SearchStats stats = delegate.getStats();
+        writer.writeStats(stats);
+        return stats;
+    }
+
+    @Override
+    public void labelExamples(Map<ObjectId, Integer> examples) {
+        delegate.labelExamples(examples);
+    }
+
+    @Override
+    public void retrainFilter(Collection<FeedbackObject> objects) {
+        delegate.retrainFilter(objects);
+    }
+
+    @Override
+    public void close() {
+        try {
+            delegate.close();
+        } finally {
+            writer.close();
+        }
+    }
+
+    @Override
+    public Optional<Path> getExportDir() {
+        return delegate.getExportDir();
+    }
+}
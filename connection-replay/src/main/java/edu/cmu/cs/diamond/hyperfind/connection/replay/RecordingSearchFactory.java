@@ -0,0 +1,102 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.replay;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.HyperFindPredicateState;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ResultCallback;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Search;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Records the searches created by a factory. Objects fetched by id while a search runs (e.g. for popups) are added
+ * to that search's recording, so they can be shown during replay as well.
+ */
+final class RecordingSearchFactory implements SearchFactory {
+
+    private final SearchFactory delegate;
+    private final Supplier<RecordingWriter> writers;
+    private volatile RecordingWriter currentWriter;
+
+    RecordingSearchFactory(SearchFactory delegate, Supplier<RecordingWriter> writers) {
+        this.delegate = delegate;
+        this.writers = writers;
+    }
+
+    @Override
+    public Search createSearch(Set<String> attributes, List<HyperFindPredicateState> predicateState) {
+        Search search = delegate.createSearch(attributes, predicateState);
+        RecordingWriter writer = writers.get();
+        currentWriter = writer;
+        return new RecordingSearch(search, writer);
+    }
+
+    @Override
+    public SearchResult getResult(ObjectId objectId, Set<String> attributes) {
+        SearchResult result = delegate.getResult(objectId, attributes);
+        RecordingWriter writer = currentWriter;
+        if (writer != null) {
+            writer.writeDetail(result);
+        }
+        return result;
+    }
+
+    @Override
+    public SearchResult getResult(byte[] data, Set<String> attributes) {
+        return delegate.getResult(data, attributes);
+    }
+
+    @Override
+    public Map<ObjectId, SearchResult> getResults(Collection<ObjectId> objectIds, Set<String> attributes) {
+        return delegate.getResults(objectIds, attributes);
+    }
+
+    @Override
+    public void getResults(Collection<ObjectId> objectIds, Set<String> attributes, ResultCallback callback) {
+        delegate.getResults(objectIds, attributes, callback);
+    }
+}
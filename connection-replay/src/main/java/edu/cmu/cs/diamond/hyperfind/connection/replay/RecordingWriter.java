@@ -0,0 +1,197 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.replay;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.ModelStats;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchStats;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends the records of one search to a {@link Recording} file. Writes come from the thread fetching results as
+ * well as from whoever polls statistics or opens popups, so they are serialized here.
+ *
+ * <p>Payloads are:
+ * <ul>
+ *     <li>{@link Recording#RESULT}, {@link Recording#DETAIL}: the object id as three length-prefixed strings, a
+ *     border color flag byte and ARGB value, then the attributes as written by {@link SearchResult#toBuffer()}</li>
+ *     <li>{@link Recording#STATS}: the {@link SearchStats} fields, optional values as a flag byte and value (zeros
+ *     if absent)</li>
+ *     <li>{@link Recording#END}: empty</li>
+ * </ul>
+ *
+ * <p>Recording is best effort: a failed write is logged and ends the recording rather than failing the search.
+ */
+final class RecordingWriter implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(RecordingWriter.class);
+
+    private static final int STATS_SIZE = 4 * Long.BYTES + 1 + Long.BYTES + 1 + 2 * Long.BYTES + 4 * Double.BYTES;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final long startTime = System.nanoTime();
+    private boolean closed = false;
+
+    RecordingWriter(Path path) {
+        this.path = path;
+        try {
+            this.channel = FileChannel.open(
+                    path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            channel.write(ByteBuffer.allocate(Recording.HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN)
+                    .putLong(Recording.MAGIC)
+                    .flip());
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create search recording " + path, e);
+        }
+    }
+
+    void writeResult(SearchResult result) {
+        writeResult(Recording.RESULT, result);
+    }
+
+    void writeDetail(SearchResult result) {
+        writeResult(Recording.DETAIL, result);
+    }
+
+    void writeStats(SearchStats stats) {
+        ByteBuffer out = startRecord(Recording.STATS, STATS_SIZE)
+                .putLong(stats.totalObjects())
+                .putLong(stats.processedObjects())
+                .putLong(stats.droppedObjects())
+                .put((byte) (stats.passedObjects().isPresent() ? 1 : 0))
+                .putLong(stats.passedObjects().orElse(0))
+                .putLong(stats.falseNegatives());
+
+        // written as zeros when absent, so every stats record has the same size
+        Optional<ModelStats> model = stats.model();
+        out.put((byte) (model.isPresent() ? 1 : 0))
+                .putLong(model.map(ModelStats::version).orElse(0L))
+                .putLong(model.map(ModelStats::textExamples).orElse(0L))
+                .putDouble(model.map(ModelStats::auc).orElse(0.0))
+                .putDouble(model.map(ModelStats::precision).orElse(0.0))
+                .putDouble(model.map(ModelStats::recall).orElse(0.0))
+                .putDouble(model.map(ModelStats::f1Score).orElse(0.0));
+
+        write(out);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+
+        write(startRecord(Recording.END, 0));
+        closed = true;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Failed to close search recording {}", path, e);
+        }
+    }
+
+    private void writeResult(byte type, SearchResult result) {
+        ObjectId id = result.getId();
+        byte[][] strings = {
+            id.objectId().getBytes(StandardCharsets.UTF_8),
+            id.deviceName().getBytes(StandardCharsets.UTF_8),
+            id.hostname().getBytes(StandardCharsets.UTF_8)
+        };
+        ByteBuffer attributes = result.toBuffer();
+
+        int size = 3 * Integer.BYTES + 1 + Integer.BYTES + attributes.remaining();
+        for (byte[] s : strings) {
+            size += s.length;
+        }
+
+        ByteBuffer out = startRecord(type, size);
+        for (byte[] s : strings) {
+            out.putInt(s.length).put(s);
+        }
+        out.put((byte) (result.getBorderColor().isPresent() ? 1 : 0));
+        out.putInt(result.getBorderColor().map(c -> c.getRGB()).orElse(0));
+        out.put(attributes);
+
+        write(out);
+    }
+
+    private ByteBuffer startRecord(byte type, int payloadSize) {
+        return ByteBuffer.allocate(Recording.RECORD_HEADER_SIZE + payloadSize)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .put(type)
+                .putLong(System.nanoTime() - startTime)
+                .putInt(payloadSize);
+    }
+
+    private synchronized void write(ByteBuffer record) {
+        if (closed) {
+            return;
+        }
+
+        record.flip();
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write search recording {}, recording stopped", path, e);
+            closed = true;
+            try {
+                channel.close();
+            } catch (IOException ex) {
+                e.addSuppressed(ex);
+            }
+        }
+    }
+}
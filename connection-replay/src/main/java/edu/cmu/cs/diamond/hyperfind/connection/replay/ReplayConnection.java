@@ -0,0 +1,153 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.replay;
+
+import com.google.common.collect.ImmutableList;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Connection;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Filter;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchInfo;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.Bundle;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.BundleState;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.BundleType;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Plays back a search recorded by {@link RecordingConnection}, for profiling the client against real result streams
+ * without servers. Every search started through it replays the same recording, whatever predicates are selected.
+ *
+ * <p>Start the client with {@code edu.cmu.cs.diamond.hyperfind.connection.replay.ReplayConnection <file> [speed]},
+ * where speed is a multiple of the recorded pace (e.g. {@code 4}) or {@code max} to deliver results as fast as they
+ * are fetched. It defaults to the recorded pace.
+ */
+public final class ReplayConnection implements Connection {
+
+    static final String FILE_EXTENSION = ".hfrec";
+
+    private static final String STATE_KEY = "replay-bundle";
+
+    private final Recording recording;
+    private final double speed;
+    private final Bundle bundle;
+
+    public ReplayConnection(String file) {
+        this(file, "1");
+    }
+
+    public ReplayConnection(String file, String speed) {
+        Path path = Paths.get(file);
+        this.recording = Recording.open(path);
+        this.speed = parseSpeed(speed);
+        this.bundle = Bundle.of(
+                "Replay of " + path.getFileName(),
+                BundleType.CODEC,
+                ImmutableList.of(),
+                BundleState.of(Map.of(STATE_KEY, new byte[0]), ImmutableList.of()),
+                (_optionMap, _examples) -> ImmutableList.of(Filter.of(
+                        "replay".getBytes(StandardCharsets.UTF_8),
+                        ImmutableList.of(),
+                        ImmutableList.of(),
+                        "replay",
+                        1,
+                        Double.POSITIVE_INFINITY,
+                        new byte[0])));
+    }
+
+    @Override
+    public SearchFactory getSearchFactory(List<Filter> filters) {
+        return new ReplaySearchFactory(recording, speed);
+    }
+
+    @Override
+    public List<SearchInfo> getRunningSearches() {
+        return ImmutableList.of();
+    }
+
+    @Override
+    public List<Bundle> getBundles() {
+        return ImmutableList.of(bundle);
+    }
+
+    @Override
+    public Bundle getBundle(InputStream inputStream) {
+        throw new UnsupportedOperationException("Replayed searches cannot load predicate files");
+    }
+
+    @Override
+    public Bundle restoreBundle(BundleState state) {
+        if (!state.bundleContents().containsKey(STATE_KEY)) {
+            throw new IllegalArgumentException("Not a replay bundle");
+        }
+        return bundle;
+    }
+
+    @Override
+    public void defineScope() {
+    }
+
+    @Override
+    public boolean supportsOfflineSearch() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsPredicateFiles() {
+        return false;
+    }
+
+    // 0 means as fast as possible
+    private static double parseSpeed(String speed) {
+        if (speed.equalsIgnoreCase("max")) {
+            return 0;
+        }
+
+        double value = Double.parseDouble(speed.endsWith("x") ? speed.substring(0, speed.length() - 1) : speed);
+        if (!(value > 0)) {
+            throw new IllegalArgumentException("Replay speed must be positive or \"max\": " + speed);
+        }
+        return value;
+    }
+}
@@ -0,0 +1,191 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.replay;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.FeedbackObject;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Search;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchStats;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays the results of a recording, each one once the replay clock reaches the time it was recorded at. The clock
+ * runs at {@code speed} times real time, or, at maximum speed, stands at the last result handed out. Statistics are
+ * the last sample recorded before the clock.
+ */
+final class ReplaySearch implements Search {
+
+    private static final SearchStats NO_STATS =
+            SearchStats.of(0, 0, 0, OptionalLong.empty(), 0, Optional.empty());
+
+    private final Recording recording;
+    private final double speed;
+    private final long startTime = System.nanoTime();
+
+    // next record to look at for results, guarded by this
+    private int nextResult = 0;
+    // recorded time of the last result handed out
+    private volatile long position = 0;
+    private volatile boolean closed = false;
+
+    private final Object statsLock = new Object();
+    private int nextStats = 0;
+    private SearchStats stats = NO_STATS;
+
+    ReplaySearch(Recording recording, double speed) {
+        this.recording = recording;
+        this.speed = speed;
+    }
+
+    @Override
+    public synchronized Optional<SearchResult> getNextResult() {
+        int record = findNextResult();
+        if (record < 0) {
+            return Optional.empty();
+        }
+
+        sleepUntil(getDueTime(record));
+        return Optional.of(take(record));
+    }
+
+    @Override
+    public synchronized Optional<List<SearchResult>> getNextResults(int maxResults, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<SearchResult> batch = new ArrayList<>();
+
+        while (batch.size() < maxResults) {
+            int record = findNextResult();
+            if (record < 0) {
+                return batch.isEmpty() ? Optional.empty() : Optional.of(batch);
+            }
+
+            // wait for the first result, then only take what is already due
+            long due = getDueTime(record);
+            if (due > (batch.isEmpty() ? deadline : System.nanoTime())) {
+                break;
+            }
+
+            sleepUntil(due);
+            batch.add(take(record));
+        }
+
+        return Optional.of(batch);
+    }
+
+    @Override
+    public SearchStats getStats() {
+        long clock = getClock();
+        synchronized (statsLock) {
+            while (nextStats < recording.size() && recording.getTime(nextStats) <= clock) {
+                if (recording.getType(nextStats) == Recording.STATS) {
+                    stats = recording.getStats(nextStats);
+                }
+                nextStats++;
+            }
+            return stats;
+        }
+    }
+
+    @Override
+    public void labelExamples(Map<ObjectId, Integer> examples) {
+    }
+
+    @Override
+    public void retrainFilter(Collection<FeedbackObject> objects) {
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public Optional<Path> getExportDir() {
+        return Optional.empty();
+    }
+
+    /**
+     * @return the next result record, or -1 if the replay is over
+     */
+    private int findNextResult() {
+        while (!closed && nextResult < recording.size()) {
+            byte type = recording.getType(nextResult);
+            if (type == Recording.RESULT) {
+                return nextResult;
+            } else if (type == Recording.END) {
+                return -1;
+            }
+            nextResult++;
+        }
+        return -1;
+    }
+
+    private SearchResult take(int record) {
+        nextResult = record + 1;
+        position = recording.getTime(record);
+        return recording.getResult(record);
+    }
+
+    private long getDueTime(int record) {
+        return speed == 0 ? System.nanoTime() : startTime + (long) (recording.getTime(record) / speed);
+    }
+
+    private long getClock() {
+        return speed == 0 ? position : (long) ((System.nanoTime() - startTime) * speed);
+    }
+
+    private static void sleepUntil(long time) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(time - System.nanoTime());
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while waiting for results", e);
+        }
+    }
+}
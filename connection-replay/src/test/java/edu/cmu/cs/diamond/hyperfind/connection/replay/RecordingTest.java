@@ -0,0 +1,117 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.replay;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.ModelStats;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchStats;
+import java.awt.Color;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+class RecordingTest {
+
+    private static final SearchStats STATS_WITHOUT_MODEL =
+            SearchStats.of(100, 40, 2, OptionalLong.empty(), 0, Optional.empty());
+
+    private static final SearchStats STATS_WITH_MODEL = SearchStats.of(
+            100, 60, 3, OptionalLong.of(12), 1, Optional.of(ModelStats.of(2, 50, 0.9, 0.8, 0.7, 0.75)));
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void readsBackStatsWithAndWithoutModel() {
+        Path path = dir.resolve("stats" + ReplayConnection.FILE_EXTENSION);
+        SearchResult first = result("a", Optional.empty());
+        SearchResult second = result("b", Optional.of(new Color(10, 20, 30, 40)));
+
+        try (RecordingWriter writer = new RecordingWriter(path)) {
+            writer.writeStats(STATS_WITHOUT_MODEL);
+            writer.writeResult(first);
+            writer.writeStats(STATS_WITH_MODEL);
+            writer.writeDetail(second);
+            writer.writeStats(STATS_WITHOUT_MODEL);
+        }
+
+        Recording recording = Recording.open(path);
+        assertEquals(6, recording.size());
+
+        assertEquals(Recording.STATS, recording.getType(0));
+        assertEquals(STATS_WITHOUT_MODEL, recording.getStats(0));
+
+        assertEquals(Recording.RESULT, recording.getType(1));
+        assertResult(first, recording.getResult(1));
+
+        assertEquals(Recording.STATS, recording.getType(2));
+        assertEquals(STATS_WITH_MODEL, recording.getStats(2));
+
+        assertEquals(Recording.DETAIL, recording.getType(3));
+        assertResult(second, recording.getResult(3));
+
+        assertEquals(STATS_WITHOUT_MODEL, recording.getStats(4));
+        assertEquals(Recording.END, recording.getType(5));
+    }
+
+    private static SearchResult result(String name, Optional<Color> borderColor) {
+        return new SearchResult(
+                ObjectId.of("/collection/" + name, "device", "host"),
+                Map.of("Display-Name", (name + "\0").getBytes(StandardCharsets.UTF_8), "", new byte[] {1, 2, 3}),
+                borderColor);
+    }
+
+    private static void assertResult(SearchResult expected, SearchResult actual) {
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getBorderColor(), actual.getBorderColor());
+        assertEquals(expected.getKeys(), actual.getKeys());
+        assertEquals(expected.getName(), actual.getName());
+        assertArrayEquals(expected.getData(), actual.getData());
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.synthetic;
+
+import com.google.common.collect.ImmutableList;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Connection;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Filter;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchFactory;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchInfo;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.Bundle;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.BundleState;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.BundleType;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.NumberOption;
+import edu.cmu.cs.diamond.hyperfind.connection.api.bundle.OptionGroup;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalDouble;
+
+/**
+ * A connection to a simulated collection that runs inside the client, for reproducing and measuring client-side
+ * throughput and latency without Diamond servers. Start the client with
+ * {@code edu.cmu.cs.diamond.hyperfind.connection.synthetic.SyntheticConnection [settings]}, see
+ * {@link SyntheticSettings} for the settings.
+ *
+ * <p>It offers a single codec and a "Synthetic Detector" predicate whose pass rate can be set per predicate instance.
+ */
+public final class SyntheticConnection implements Connection {
+
+    private static final String STATE_KEY = "synthetic-bundle";
+    private static final String PASS_RATE_OPTION = "pass_rate";
+
+    private final SyntheticSettings settings;
+    private final SyntheticObjects objects;
+    private final List<Bundle> bundles;
+
+    public SyntheticConnection() {
+        this("");
+    }
+
+    public SyntheticConnection(String settings) {
+        this.settings = SyntheticSettings.parse(settings);
+        this.objects = new SyntheticObjects(this.settings);
+        this.bundles = ImmutableList.of(
+                Bundle.of(
+                        "Synthetic Images",
+                        BundleType.CODEC,
+                        ImmutableList.of(),
+                        getState("codec"),
+                        (_optionMap, _examples) -> ImmutableList.of(createFilter("RGB", ImmutableList.of()))),
+                Bundle.of(
+                        "Synthetic Detector",
+                        BundleType.PREDICATE,
+                        ImmutableList.of(OptionGroup.of(Optional.empty(), ImmutableList.of(NumberOption.of(
+                                "Pass rate",
+                                PASS_RATE_OPTION,
+                                1,
+                                OptionalDouble.of(0),
+                                OptionalDouble.of(1),
+                                0.05,
+                                1,
+                                Optional.empty())))),
+                        getState("detector"),
+                        (optionMap, _examples) -> ImmutableList.of(createFilter(
+                                "synthetic_" + Integer.toHexString(optionMap.hashCode()),
+                                ImmutableList.of(optionMap.getOrDefault(PASS_RATE_OPTION, "1"))))));
+    }
+
+    @Override
+    public SearchFactory getSearchFactory(List<Filter> filters) {
+        return new SyntheticSearchFactory(settings, objects, filters);
+    }
+
+    @Override
+    public List<SearchInfo> getRunningSearches() {
+        return ImmutableList.of();
+    }
+
+    @Override
+    public List<Bundle> getBundles() {
+        return bundles;
+    }
+
+    @Override
+    public Bundle getBundle(InputStream inputStream) {
+        throw new UnsupportedOperationException("The synthetic connection cannot load predicate files");
+    }
+
+    @Override
+    public Bundle restoreBundle(BundleState state) {
+        return bundles.stream()
+                .filter(b -> b.state().bundleContents().keySet().equals(state.bundleContents().keySet())
+                        && new String(state.bundleContents().get(STATE_KEY), StandardCharsets.UTF_8)
+                        .equals(new String(b.state().bundleContents().get(STATE_KEY), StandardCharsets.UTF_8)))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Not a synthetic bundle"));
+    }
+
+    @Override
+    public void defineScope() {
+    }
+
+    @Override
+    public boolean supportsOfflineSearch() {
+        return false;
+    }
+
+    @Override
+    public boolean supportsPredicateFiles() {
+        return false;
+    }
+
+    // the predicate passes the fraction of objects given as its argument, the codec passes everything
+    static double getPassRate(Filter filter) {
+        return filter.arguments().isEmpty() ? 1 : Double.parseDouble(filter.arguments().get(0));
+    }
+
+    private static BundleState getState(String name) {
+        return BundleState.of(Map.of(STATE_KEY, name.getBytes(StandardCharsets.UTF_8)), ImmutableList.of());
+    }
+
+    private static Filter createFilter(String name, List<String> arguments) {
+        return Filter.of(
+                name.getBytes(StandardCharsets.UTF_8),
+                ImmutableList.of(),
+                arguments,
+                name,
+                1,
+                Double.POSITIVE_INFINITY,
+                new byte[0]);
+    }
+}
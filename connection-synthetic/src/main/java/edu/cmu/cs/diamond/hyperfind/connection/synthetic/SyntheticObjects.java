@@ -0,0 +1,264 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.synthetic;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Supplier;
+import javax.imageio.ImageIO;
+
+/**
+ * The objects of the simulated collection. Object {@code n} always has the same attributes, so a result can be
+ * fetched again by id (e.g. for a popup or an export) and runs with the same seed are repeatable. Images are
+ * generated once up front and shared between objects, so that producing results costs next to nothing and
+ * measurements reflect the client.
+ */
+final class SyntheticObjects {
+
+    private static final String ID_PREFIX = "/synthetic/";
+
+    private final SyntheticSettings settings;
+    private final BufferedImage[] images;
+    private final byte[][] originals;
+    private final byte[][] thumbnails;
+    private final byte[][] heatmaps;
+
+    SyntheticObjects(SyntheticSettings settings) {
+        this.settings = settings;
+
+        Random random = new Random(settings.seed);
+        int count = settings.distinctImages;
+        this.images = new BufferedImage[count];
+        this.originals = new byte[count][];
+        this.thumbnails = new byte[count][];
+        this.heatmaps = new byte[count][];
+
+        for (int i = 0; i < count; i++) {
+            images[i] = photo(random, settings.imageWidth, settings.imageHeight);
+            originals[i] = encode(images[i], "jpeg");
+            thumbnails[i] = encode(scale(images[i], settings.thumbnailWidth, settings.thumbnailHeight), "jpeg");
+            heatmaps[i] = encode(heatmap(random, settings.imageWidth, settings.imageHeight), "png");
+        }
+    }
+
+    ObjectId getId(long index) {
+        String server = "synthetic-" + index % settings.servers;
+        return ObjectId.of(ID_PREFIX + index, server, server + ".localdomain");
+    }
+
+    long getIndex(ObjectId id) {
+        String objectId = id.objectId();
+        if (!objectId.startsWith(ID_PREFIX)) {
+            throw new IllegalArgumentException("Not a synthetic object: " + objectId);
+        }
+        return Long.parseLong(objectId.substring(ID_PREFIX.length()));
+    }
+
+    /**
+     * Creates the result for object {@code index} as produced by the given filters, with only the requested
+     * attributes, or all of them if none are requested.
+     */
+    SearchResult create(long index, Collection<String> filterNames, Set<String> attributes) {
+        Random random = new Random(settings.seed ^ index);
+        int image = (int) (index % images.length);
+        Map<String, byte[]> values = new HashMap<>();
+
+        put(values, attributes, "thumbnail.jpeg", () -> thumbnails[image]);
+        put(values, attributes, "_cols.int", () -> intAttribute(settings.imageWidth));
+        put(values, attributes, "_rows.int", () -> intAttribute(settings.imageHeight));
+        put(values, attributes, "Display-Name", () -> stringAttribute("synthetic-" + index + ".jpg"));
+        put(values, attributes, "Device-Name", () -> stringAttribute(getId(index).deviceName()));
+        put(values, attributes, "feature_vector.json", () -> featureVector(random));
+        put(values, attributes, SearchResult.DATA_ATTR, () -> originals[image]);
+        put(values, attributes, "_rgb_image.rgbimage", () -> rgbImage(images[image]));
+
+        for (String filter : filterNames) {
+            put(values, attributes, "_filter." + filter + "_score", () -> stringAttribute("1"));
+            if (settings.patches > 0) {
+                put(values, attributes, "_filter." + filter + ".patches", () -> patches(random));
+            }
+            if (settings.heatmaps) {
+                put(values, attributes, "_filter." + filter + ".heatmap.png", () -> heatmaps[image]);
+            }
+        }
+
+        return new SearchResult(getId(index), values, Optional.empty());
+    }
+
+    private static void put(
+            Map<String, byte[]> values,
+            Set<String> attributes,
+            String name,
+            Supplier<byte[]> value) {
+        if (attributes.isEmpty() || attributes.contains(name)) {
+            values.put(name, value.get());
+        }
+    }
+
+    private byte[] patches(Random random) {
+        int count = settings.patches;
+        ByteBuffer buf = ByteBuffer.allocate(Integer.BYTES + Double.BYTES + count * 4 * Integer.BYTES)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(count);
+        buf.putDouble(random.nextDouble());
+        for (int i = 0; i < count; i++) {
+            int x0 = random.nextInt(settings.imageWidth / 2);
+            int y0 = random.nextInt(settings.imageHeight / 2);
+            buf.putInt(x0);
+            buf.putInt(y0);
+            buf.putInt(x0 + random.nextInt(settings.imageWidth / 2));
+            buf.putInt(y0 + random.nextInt(settings.imageHeight / 2));
+        }
+        return buf.array();
+    }
+
+    private static byte[] featureVector(Random random) {
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < 128; i++) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(random.nextFloat());
+        }
+        return sb.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    // the layout of the "_rgb_image.rgbimage" attribute produced by the RGB codec
+    private static byte[] rgbImage(BufferedImage image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ByteBuffer buf = ByteBuffer.allocate(16 + width * height * 4).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(0);
+        buf.putInt(0);
+        buf.putInt(height);
+        buf.putInt(width);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int rgb = image.getRGB(x, y);
+                buf.put((byte) (rgb >> 16));
+                buf.put((byte) (rgb >> 8));
+                buf.put((byte) rgb);
+                buf.put((byte) 0xff);
+            }
+        }
+        return buf.array();
+    }
+
+    // smooth gradients with some noise, so that it compresses like a photo
+    private static BufferedImage photo(Random random, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int r0 = random.nextInt(128);
+        int g0 = random.nextInt(128);
+        int b0 = random.nextInt(128);
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int noise = random.nextInt(16);
+                int r = (r0 + 127 * x / width + noise) & 0xff;
+                int g = (g0 + 127 * y / height + noise) & 0xff;
+                int b = (b0 + 64 * (x + y) / (width + height) + noise) & 0xff;
+                image.setRGB(x, y, (r << 16) | (g << 8) | b);
+            }
+        }
+        return image;
+    }
+
+    // mostly black with a few bright blobs, like real filter output
+    private static BufferedImage heatmap(Random random, int width, int height) {
+        BufferedImage heatmap = new BufferedImage(width, height, BufferedImage.TYPE_BYTE_GRAY);
+        int maxSize = Math.max(2, Math.min(width, height) / 3);
+        Graphics2D g = heatmap.createGraphics();
+        for (int i = 0; i < 5; i++) {
+            int size = maxSize / 2 + random.nextInt(maxSize / 2);
+            g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256)));
+            int x = random.nextInt(Math.max(1, width - size));
+            int y = random.nextInt(Math.max(1, height - size));
+            g.fillOval(x, y, size, size);
+        }
+        g.dispose();
+        return heatmap;
+    }
+
+    private static BufferedImage scale(BufferedImage image, int width, int height) {
+        BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = scaled.createGraphics();
+        g.drawImage(image.getScaledInstance(width, height, Image.SCALE_SMOOTH), 0, 0, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private static byte[] intAttribute(int value) {
+        return ByteBuffer.allocate(Integer.BYTES).order(ByteOrder.LITTLE_ENDIAN).putInt(value).array();
+    }
+
+    // NUL terminated, as sent by the Diamond servers
+    private static byte[] stringAttribute(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        byte[] attribute = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, attribute, 0, bytes.length);
+        return attribute;
+    }
+
+    private static byte[] encode(BufferedImage image, String format) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            ImageIO.write(image, format, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
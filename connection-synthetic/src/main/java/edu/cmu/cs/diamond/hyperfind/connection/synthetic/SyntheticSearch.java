@@ -0,0 +1,215 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.synthetic;
+
+import edu.cmu.cs.diamond.hyperfind.connection.api.FeedbackObject;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ModelStats;
+import edu.cmu.cs.diamond.hyperfind.connection.api.ObjectId;
+import edu.cmu.cs.diamond.hyperfind.connection.api.Search;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchResult;
+import edu.cmu.cs.diamond.hyperfind.connection.api.SearchStats;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalLong;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A search over the simulated collection. Objects are processed at the configured rate, each one an interval after the
+ * last, and each one passes with the search's pass rate. The search ends when every object was processed.
+ */
+final class SyntheticSearch implements Search {
+
+    // how far processing may fall behind the rate and still catch up; longer pauses of the client are not made up
+    // for in a burst
+    private static final long MAX_LAG_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private final SyntheticSettings settings;
+    private final SyntheticObjects objects;
+    private final List<String> filterNames;
+    private final Set<String> attributes;
+    private final double passRate;
+    private final Random random;
+    private final long startTime = System.nanoTime();
+    private final long intervalNanos;
+
+    // when the last object was due, guarded by this
+    private long lastDue = startTime;
+
+    // only written by the thread fetching results, read by the statistics
+    private volatile long processed = 0;
+    private volatile long passed = 0;
+    private volatile boolean closed = false;
+
+    private final AtomicLong retrainedVersions = new AtomicLong();
+    private final AtomicLong examples = new AtomicLong();
+
+    SyntheticSearch(
+            SyntheticSettings settings,
+            SyntheticObjects objects,
+            List<String> filterNames,
+            Set<String> attributes,
+            double passRate) {
+        this.settings = settings;
+        this.objects = objects;
+        this.filterNames = filterNames;
+        this.attributes = attributes;
+        this.passRate = passRate;
+        this.random = new Random(settings.seed);
+        this.intervalNanos = (long) (1e9 / settings.rate);
+    }
+
+    @Override
+    public synchronized Optional<SearchResult> getNextResult() {
+        while (!isDone()) {
+            long due = getNextDueTime();
+            sleepUntil(due);
+            Optional<SearchResult> result = processNext(due);
+            if (result.isPresent()) {
+                return result;
+            }
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public synchronized Optional<List<SearchResult>> getNextResults(int maxResults, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        List<SearchResult> batch = new ArrayList<>();
+
+        while (batch.size() < maxResults && !isDone()) {
+            // wait for the first result, then only take what is already due
+            long due = getNextDueTime();
+            if (due > (batch.isEmpty() ? deadline : System.nanoTime())) {
+                break;
+            }
+
+            sleepUntil(due);
+            processNext(due).ifPresent(batch::add);
+        }
+
+        return (batch.isEmpty() && isDone()) ? Optional.empty() : Optional.of(batch);
+    }
+
+    @Override
+    public SearchStats getStats() {
+        long processedObjects = processed;
+        long passedObjects = passed;
+        return SearchStats.of(
+                settings.totalObjects,
+                processedObjects,
+                processedObjects - passedObjects,
+                OptionalLong.of(passedObjects),
+                0,
+                getModelStats());
+    }
+
+    @Override
+    public void labelExamples(Map<ObjectId, Integer> newExamples) {
+        examples.addAndGet(newExamples.size());
+    }
+
+    @Override
+    public void retrainFilter(Collection<FeedbackObject> objects) {
+        examples.addAndGet(objects.size());
+        retrainedVersions.incrementAndGet();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+    }
+
+    @Override
+    public Optional<Path> getExportDir() {
+        return Optional.empty();
+    }
+
+    private boolean isDone() {
+        return closed || processed >= settings.totalObjects;
+    }
+
+    private Optional<SearchResult> processNext(long due) {
+        lastDue = due;
+        long index = processed;
+        processed = index + 1;
+
+        if (random.nextDouble() >= passRate) {
+            return Optional.empty();
+        }
+
+        passed++;
+        return Optional.of(objects.create(index, filterNames, attributes));
+    }
+
+    private long getNextDueTime() {
+        return Math.max(lastDue, System.nanoTime() - MAX_LAG_NANOS) + intervalNanos;
+    }
+
+    private static void sleepUntil(long time) {
+        try {
+            TimeUnit.NANOSECONDS.sleep(time - System.nanoTime());
+        } catch (InterruptedException e) {
+            throw new RuntimeException("Interrupted while waiting for results", e);
+        }
+    }
+
+    private Optional<ModelStats> getModelStats() {
+        long version = retrainedVersions.get();
+        if (settings.modelInterval > 0) {
+            version += TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startTime) / settings.modelInterval;
+        }
+        if (version == 0) {
+            return Optional.empty();
+        }
+
+        // every version is a bit better than the last
+        double quality = 1 - 0.5 / (version + 1);
+        return Optional.of(ModelStats.of(version, examples.get(), quality, quality, quality * 0.9, quality * 0.95));
+    }
+}
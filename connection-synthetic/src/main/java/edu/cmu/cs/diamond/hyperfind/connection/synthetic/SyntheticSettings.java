@@ -0,0 +1,108 @@
+/*
+ * HyperFind, a search application for the OpenDiamond platform
+ *
+ * Copyright (c) 2009-2020 Carnegie Mellon University
+ * All rights reserved.
+ *
+ * HyperFind is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, version 2.
+ *
+ * HyperFind is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with HyperFind. If not, see <http://www.gnu.org/licenses/>.
+ *
+ * Linking HyperFind statically or dynamically with other modules is
+ * making a combined work based on HyperFind. Thus, the terms and
+ * conditions of the GNU General Public License cover the whole
+ * combination.
+ *
+ * In addition, as a special exception, the copyright holders of
+ * HyperFind give you permission to combine HyperFind with free software
+ * programs or libraries that are released under the GNU LGPL, the
+ * Eclipse Public License 1.0, or the Apache License 2.0. You may copy and
+ * distribute such a system following the terms of the GNU GPL for
+ * HyperFind and the licenses of the other code concerned, provided that
+ * you include the source code of that other code when and as the GNU GPL
+ * requires distribution of source code.
+ *
+ * Note that people who make modified versions of HyperFind are not
+ * obligated to grant this special exception for their modified versions;
+ * it is their choice whether to do so. The GNU General Public License
+ * gives permission to release a modified version without this exception;
+ * this exception also makes it possible to release a modified version
+ * which carries forward this exception.
+ */
+
+package edu.cmu.cs.diamond.hyperfind.connection.synthetic;
+
+import com.google.common.base.Splitter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Shape and pace of the simulated collection, parsed from a comma separated list of {@code key=value} pairs (e.g.
+ * {@code rate=500,passRate=0.1}). Unset keys keep their defaults.
+ */
+final class SyntheticSettings {
+
+    /** Number of objects in the collection; a search ends once it has processed all of them. */
+    final long totalObjects;
+    /** Objects processed per second. */
+    final double rate;
+    /** Fraction of the processed objects that pass the search, before any predicate's own pass rate. */
+    final double passRate;
+    final int thumbnailWidth;
+    final int thumbnailHeight;
+    final int imageWidth;
+    final int imageHeight;
+    /** Whether filters return a heatmap for each result. */
+    final boolean heatmaps;
+    /** Number of patches each filter returns for each result. */
+    final int patches;
+    /** Number of distinct images generated up front and reused across results. */
+    final int distinctImages;
+    /** Number of servers the collection is spread over. */
+    final int servers;
+    /** Seconds between new model versions reported in the statistics, or 0 to only bump it when retraining. */
+    final int modelInterval;
+    final long seed;
+
+    private SyntheticSettings(Map<String, String> values) {
+        this.totalObjects = Long.parseLong(take(values, "total", "100000"));
+        this.rate = Double.parseDouble(take(values, "rate", "200"));
+        this.passRate = Double.parseDouble(take(values, "passRate", "0.25"));
+        this.thumbnailWidth = Integer.parseInt(take(values, "thumbnailWidth", "200"));
+        this.thumbnailHeight = Integer.parseInt(take(values, "thumbnailHeight", "150"));
+        this.imageWidth = Integer.parseInt(take(values, "imageWidth", "1024"));
+        this.imageHeight = Integer.parseInt(take(values, "imageHeight", "768"));
+        this.heatmaps = Boolean.parseBoolean(take(values, "heatmaps", "true"));
+        this.patches = Integer.parseInt(take(values, "patches", "4"));
+        this.distinctImages = Math.max(1, Integer.parseInt(take(values, "distinctImages", "16")));
+        this.servers = Math.max(1, Integer.parseInt(take(values, "servers", "4")));
+        this.modelInterval = Integer.parseInt(take(values, "modelInterval", "0"));
+        this.seed = Long.parseLong(take(values, "seed", "0"));
+
+        if (!values.isEmpty()) {
+            throw new IllegalArgumentException("Unknown synthetic connection settings: " + values.keySet());
+        }
+        if (rate <= 0 || passRate < 0 || passRate > 1) {
+            throw new IllegalArgumentException("rate must be positive and passRate between 0 and 1");
+        }
+    }
+
+    static SyntheticSettings parse(String spec) {
+        Map<String, String> values = new HashMap<>(
+                Splitter.on(',').trimResults().omitEmptyStrings().withKeyValueSeparator('=').split(spec));
+        return new SyntheticSettings(values);
+    }
+
+    private static String take(Map<String, String> values, String key, String defaultValue) {
+        String value = values.remove(key);
+        return value == null ? defaultValue : value;
+    }
+}